@@ -1,9 +1,7 @@
-dynActorArray = {}
-
 function onCreate(world)
     world:setWinHint('Drop houses!')
 
-    ground = luajava.newInstance(Ground)
+    ground = create(Ground)
     ground:addVertex(752, 48)
     ground:addVertex(752, 344)
     ground:addVertex(696, 208)
@@ -14,32 +12,21 @@ function onCreate(world)
     ground:addVertex(32, 32)
     world:add(ground)
 
-    dynamicActor = luajava.newInstance(Home)
+    dynamicActor = create(Home)
     world:add(dynamicActor)
-    dynamicActor:setPosition(luajava.newInstance(Vector2, 650, 300))
-    table.insert(dynActorArray, dynamicActor)
+    dynamicActor:setPosition(650, 300)
+    world:winWhenRotated(dynamicActor, 30)
 
     for i = 0, 3 do
-        dynamicActorTmp = luajava.newInstance(Home)
+        dynamicActorTmp = create(Home)
         dynamicActorTmp:setBodyBox(20, 100 + i * 10)
         dynamicActorTmp:setSpriteBox(20, 100 + i * 10)
         world:add(dynamicActorTmp)
-        dynamicActorTmp:setPosition(luajava.newInstance(Vector2, 150 + i * 90, 200))
-
-        table.insert(dynActorArray, dynamicActorTmp)
+        dynamicActorTmp:setPosition(150 + i * 90, 200)
+        world:winWhenRotated(dynamicActorTmp, 30)
     end
 
-    cloud = luajava.newInstance(Cloud)
+    cloud = create(Cloud)
     world:add(cloud)
-    cloud:setPosition(luajava.newInstance(Vector2, 650, 420))
-end
-
-function onCheck(mArray)
-    for i = 1, #dynActorArray do
-        if dynActorArray[i]:getRotation() > -30 and dynActorArray[i]:getRotation() < 30 then
-            return false
-        end
-    end
-
-    return true
+    cloud:setPosition(650, 420)
 end
\ No newline at end of file
@@ -1,7 +1,8 @@
 function onCreate(world)
     world:setWinHint('Flood house!!')
+    world:winWhenDropsInside(0, 0, 800, 200, 250)
 
-    ground = luajava.newInstance(Ground)
+    ground = create(Ground)
     ground:addVertex(736, 48)
     ground:addVertex(736, 352)
     ground:addVertex(720, 352)
@@ -25,27 +26,9 @@ function onCreate(world)
     ground:addVertex(8, 48)
     world:add(ground)
 
-    dynamicActor = luajava.newInstance(Home)
+    dynamicActor = create(Home)
     dynamicActor:setBodyBox(200, 100)
     dynamicActor:setSpriteBox(200, 100)
     world:add(dynamicActor)
-    dynamicActor:setPosition(luajava.newInstance(Vector2, 200, 150))
-end
-
-function onCheck(mArray)
-    count = 0
-    mArray:size()
-    for i = 0, mArray:size() - 1 do
-        if mArray:get(i):getStringType() == "DROP" then
-            if mArray:get(i):getPosition().y < 200 then
-                count = count + 1
-            end
-        end
-    end
-
-    if count > 250 then
-        return true
-    else
-        return false
-    end
+    dynamicActor:setPosition(200, 150)
 end
\ No newline at end of file
@@ -1,9 +1,8 @@
-dynActorArray = {}
-
 function onCreate(world)
     world:setWinHint('Drop houses!')
+    world:setPoolsEnabled(true)
 
-    ground = luajava.newInstance(Ground)
+    ground = create(Ground)
     ground:addVertex(752, 48)
     ground:addVertex(752, 344)
     ground:addVertex(696, 208)
@@ -14,22 +13,12 @@ function onCreate(world)
     ground:addVertex(32, 32)
     world:add(ground)
 
-    dynamicActor = luajava.newInstance(Home)
+    dynamicActor = create(Home)
     world:add(dynamicActor)
-    dynamicActor:setPosition(luajava.newInstance(Vector2, 650, 300))
-    table.insert(dynActorArray, dynamicActor)
+    dynamicActor:setPosition(650, 300)
+    world:winWhenRotated(dynamicActor, 30)
 
-    emitterActor = luajava.newInstance(Emitter)
+    emitterActor = create(Emitter)
     world:add(emitterActor)
-    emitterActor:setPosition(luajava.newInstance(Vector2, 300, 300))
-end
-
-function onCheck(mArray)
-    for i = 1, #dynActorArray do
-        if dynActorArray[i]:getRotation() > -30 and dynActorArray[i]:getRotation() < 30 then
-            return false
-        end
-    end
-
-    return true
+    emitterActor:setPosition(300, 300)
 end
\ No newline at end of file
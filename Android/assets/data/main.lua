@@ -2,6 +2,13 @@
 NONE = "NONE"
 DROP = "DROP"
 GROUND = "GROUND"
+CLOUD = "CLOUD"
+EMITTER = "EMITTER"
+HOME = "HOME"
+HAMMER = "HAMMER"
+-- Liquid solvers
+LIQUID_DEFAULT = "default"
+LIQUID_PBF = "pbf"
 -- Game Classes
 Drop = "com.alex.rain.models.Drop"
 Ground = "com.alex.rain.models.Ground"
@@ -1,5 +1,5 @@
 function onCreate(world)
-    ground = luajava.newInstance(Ground)
+    ground = create(Ground)
     ground:addVertex(800, 480)
     ground:addVertex(792, 480)
     ground:addVertex(792, 8)
@@ -12,13 +12,7 @@ function onCreate(world)
     ground:addVertex(800, 0)
     world:add(ground)
 
-    for i = 0, 49 do
-        for j = 0, 29 do
-            drop = luajava.newInstance(Drop)
-            world:add(drop)
-            drop:setPosition(luajava.newInstance(Vector2, i * 10 + 30, j * 10 + 20))
-        end
-    end
+    world:spawn(Drop, 1500, 25, 15, 500, 300)
 end
 
 function onCheck(mArray)
@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright 2013 See AUTHORS file.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE V3
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.gnu.org/licenses/gpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.alex.rain.benchmark;
+
+import com.alex.rain.helpers.ParticleCollider;
+import com.alex.rain.models.Drop;
+import com.alex.rain.models.DropStore;
+import com.alex.rain.simulation.GameSimulation;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.*;
+
+import java.util.Random;
+
+/**
+ * Drops in a box shaped basin, laid out the same way for the same count and distribution on every run.
+ * The basin grows with the count, so the water of a pooled basin is always about as deep as it is wide.
+ * Drops are Box2D bodies or particles moved by a {@link ParticleCollider}.
+ */
+public class DropScene {
+    /**
+     * Spacing drops settle at in a pool, in world units.
+     */
+    public static final float SPACING = 9;
+
+    public enum Distribution {
+        /** Sparse drops falling over the whole basin. */
+        RAIN,
+        /** Drops settled at the bottom of the basin. */
+        BASIN,
+        /** Drops spread at random over the whole basin. */
+        UNIFORM
+    }
+
+    private final World world = new World(new Vector2(0, -9.8f), true);
+    private final DropStore dropStore = new DropStore();
+    private final float width;
+    private final float height;
+    private final ParticleCollider particleCollider;
+
+    public DropScene(int count, Distribution distribution) {
+        this(count, distribution, false);
+    }
+
+    public DropScene(int count, Distribution distribution, boolean particles) {
+        int side = (int)Math.ceil(Math.sqrt(count));
+        width = Math.max(800, side * SPACING * 2);
+        height = Math.max(480, side * SPACING * 2);
+        createBasin();
+        float radius = new Drop().RADIUS * GameSimulation.BOX_TO_WORLD;
+        particleCollider = new ParticleCollider(dropStore, radius, 0, world.getGravity().y * GameSimulation.BOX_TO_WORLD);
+        // Same walls as the Box2D basin
+        float wall = 4;
+        particleCollider.addOutline(new float[] {-wall, -wall, width + wall, -wall, width + wall, wall, -wall, wall});
+        particleCollider.addOutline(new float[] {-wall, -wall, wall, -wall, wall, height, -wall, height});
+        particleCollider.addOutline(new float[] {width - wall, -wall, width + wall, -wall, width + wall, height, width - wall, height});
+
+        Random random = new Random(1);
+        for(int i = 0; i < count; i++) {
+            float x, y, vy = 0;
+            if(distribution == Distribution.BASIN) {
+                // Block in the middle of the basin floor with some noise, as after a few seconds of settling
+                x = (width - side * SPACING) / 2 + (i % side) * SPACING + random.nextFloat() * 2;
+                y = SPACING + (i / side) * SPACING + random.nextFloat() * 2;
+            } else if(distribution == Distribution.RAIN) {
+                x = SPACING + random.nextFloat() * (width - 2 * SPACING);
+                y = height / 2 + random.nextFloat() * (height / 2 - SPACING);
+                vy = -200;
+            } else {
+                x = SPACING + random.nextFloat() * (width - 2 * SPACING);
+                y = SPACING + random.nextFloat() * (height - 2 * SPACING);
+            }
+
+            int index;
+            if(particles) {
+                index = dropStore.add(x, y);
+            } else {
+                Drop drop = new Drop();
+                drop.createPhysicsActor(world);
+                index = dropStore.add(drop.getBody());
+            }
+            dropStore.setPosition(index, x, y);
+            dropStore.setLinearVelocity(index, 0, vy);
+        }
+        dropStore.readBodies();
+    }
+
+    private void createBasin() {
+        BodyDef bodyDef = new BodyDef();
+        Body body = world.createBody(bodyDef);
+        PolygonShape shape = new PolygonShape();
+        float w = width * GameSimulation.WORLD_TO_BOX;
+        float h = height * GameSimulation.WORLD_TO_BOX;
+        float wall = 0.4f;
+        shape.setAsBox(w / 2, wall, new Vector2(w / 2, 0), 0);
+        body.createFixture(shape, 0);
+        shape.setAsBox(wall, h / 2, new Vector2(0, h / 2), 0);
+        body.createFixture(shape, 0);
+        shape.setAsBox(wall, h / 2, new Vector2(w, h / 2), 0);
+        body.createFixture(shape, 0);
+        shape.dispose();
+    }
+
+    public World getWorld() {
+        return world;
+    }
+
+    public ParticleCollider getParticleCollider() {
+        return particleCollider;
+    }
+
+    public DropStore getDropStore() {
+        return dropStore;
+    }
+
+    public float getWidth() {
+        return width;
+    }
+
+    public float getHeight() {
+        return height;
+    }
+
+    public void dispose() {
+        world.dispose();
+    }
+}
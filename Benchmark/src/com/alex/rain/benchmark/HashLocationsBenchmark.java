@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * Copyright 2013 See AUTHORS file.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE V3
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.gnu.org/licenses/gpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.alex.rain.benchmark;
+
+import com.alex.rain.helpers.CellList;
+import com.alex.rain.helpers.LiquidHelper;
+import com.alex.rain.models.DropStore;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sorting the drops into the cell grid, what the liquid does in hashLocations() before rebuilding neighbor lists.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class HashLocationsBenchmark {
+    @Param({"1000", "5000", "20000"})
+    public int count;
+
+    @Param({"RAIN", "BASIN", "UNIFORM"})
+    public DropScene.Distribution distribution;
+
+    private DropScene scene;
+    private final CellList cellList = new CellList();
+    private float radius;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        GdxNativesLoader.load();
+        scene = new DropScene(count, distribution);
+        LiquidHelper liquidHelper = new LiquidHelper(scene.getDropStore(), false);
+        radius = liquidHelper.getRadius() + liquidHelper.getNeighborList().getSkin();
+        liquidHelper.dispose();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        scene.dispose();
+    }
+
+    @Benchmark
+    public CellList hashLocations() {
+        DropStore dropStore = scene.getDropStore();
+        cellList.build(dropStore.getXs(), dropStore.getYs(), dropStore.size(), radius);
+        return cellList;
+    }
+}
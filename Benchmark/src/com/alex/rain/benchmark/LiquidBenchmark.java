@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright 2013 See AUTHORS file.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE V3
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.gnu.org/licenses/gpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.alex.rain.benchmark;
+
+import com.alex.rain.helpers.LiquidHelper;
+import com.alex.rain.models.DropStore;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One liquid step with the settings of the desktop game. Drops do not move between steps, so the neighbor
+ * lists are built once and the kernel itself is measured. Sleeping is off, it would depend on the history.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class LiquidBenchmark {
+    @Param({"1000", "5000", "20000"})
+    public int count;
+
+    @Param({"RAIN", "BASIN", "UNIFORM"})
+    public DropScene.Distribution distribution;
+
+    @Param({"1"})
+    public int threads;
+
+    /**
+     * Size of the kernel lookup table, 0 computes the kernel. Threads run the same symmetric kernel,
+     * so the table is used with any thread count.
+     */
+    @Param({"0"})
+    public int kernelTableSize;
+
+    private DropScene scene;
+    private LiquidHelper liquidHelper;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        GdxNativesLoader.load();
+        scene = new DropScene(count, distribution);
+        liquidHelper = new LiquidHelper(scene.getDropStore(), false);
+        liquidHelper.setSymmetric(true);
+        liquidHelper.setThreads(threads);
+        liquidHelper.setKernelTableSize(kernelTableSize);
+    }
+
+    /**
+     * Impulses add up over the iteration, every iteration starts at rest again.
+     */
+    @Setup(Level.Iteration)
+    public void resetVelocities() {
+        DropStore dropStore = scene.getDropStore();
+        for(int i = 0; i < dropStore.size(); i++)
+            dropStore.setLinearVelocity(i, 0, 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        liquidHelper.dispose();
+        scene.dispose();
+    }
+
+    @Benchmark
+    public void applyLiquidConstraint() {
+        liquidHelper.applyLiquidConstraint(1 / 60f);
+    }
+}
@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright 2013 See AUTHORS file.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE V3
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.gnu.org/licenses/gpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.alex.rain.benchmark;
+
+import com.alex.rain.helpers.LiquidHelper;
+import com.alex.rain.models.DropStore;
+import com.alex.rain.simulation.GameSimulation;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.*;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compares the symmetric liquid kernel with the kernel with lookup tables of a few sizes on a block of
+ * resting water. Positions stay fixed, so only the kernel is measured. Max difference is the
+ * largest velocity difference from the plain kernel, kernel error the largest error of a table for drops
+ * Box2D keeps apart. Arguments: drop counts, default 1000 5000 20000.
+ */
+public class LiquidKernelBenchmark {
+    private static final int WARMUP_STEPS = 300;
+    private static final int MEASURED_STEPS = 100;
+    private static final float STEP = 1 / 60f;
+    private static final int[] TABLE_SIZES = {256, 1024, 4096, 16384};
+    /** Closest two drops get in Box2D, twice the drop radius in world units. */
+    private static final float MIN_DISTANCE = 6;
+
+    public static void main(String[] args) {
+        GdxNativesLoader.load();
+
+        int[] counts = {1000, 5000, 20000};
+        if(args.length > 0) {
+            counts = new int[args.length];
+            for(int i = 0; i < args.length; i++)
+                counts[i] = Integer.parseInt(args[i]);
+        }
+
+        System.out.println("drops   kernel          ms   speedup   max difference   kernel error");
+        for(int count : counts) {
+            World world = new World(new Vector2(0, -9.8f), true);
+            DropStore dropStore = createDrops(world, count);
+
+            double scalar = measure(dropStore, 0);
+            float[] scalarVelocities = velocities(dropStore);
+            System.out.println(String.format("%5d   %-12s %7.3f", count, "scalar", scalar));
+            for(int size : TABLE_SIZES) {
+                double table = measure(dropStore, size);
+                System.out.println(String.format("%5d   %-12s %7.3f %8.2fx %16.6f %14.6f", count, "table " + size, table,
+                        scalar / table, difference(scalarVelocities, velocities(dropStore)), kernelError(size)));
+            }
+            world.dispose();
+        }
+    }
+
+    private static float difference(float[] expected, float[] actual) {
+        float difference = 0;
+        for(int i = 0; i < expected.length; i++)
+            difference = Math.max(difference, Math.abs(expected[i] - actual[i]));
+        return difference;
+    }
+
+    private static float kernelError(int size) {
+        DropStore dropStore = new DropStore();
+        LiquidHelper liquidHelper = new LiquidHelper(dropStore, false);
+        liquidHelper.setKernelTableSize(size);
+        float error = liquidHelper.getKernelTable().getMaxError(MIN_DISTANCE * liquidHelper.getMultiplier());
+        liquidHelper.dispose();
+        return error;
+    }
+
+    /**
+     * Square block of drops at the spacing they settle at, with some noise.
+     */
+    private static DropStore createDrops(World world, int count) {
+        DropStore dropStore = new DropStore();
+        Random random = new Random(1);
+        int side = (int)Math.ceil(Math.sqrt(count));
+        BodyDef bodyDef = new BodyDef();
+        bodyDef.type = BodyDef.BodyType.DynamicBody;
+        CircleShape circle = new CircleShape();
+        circle.setRadius(0.3f);
+        for(int i = 0; i < count; i++) {
+            float x = 100 + (i % side) * 9 + random.nextFloat() * 2;
+            float y = 100 + (i / side) * 9 + random.nextFloat() * 2;
+            bodyDef.position.set(x * GameSimulation.WORLD_TO_BOX, y * GameSimulation.WORLD_TO_BOX);
+            Body body = world.createBody(bodyDef);
+            body.createFixture(circle, 1);
+            dropStore.add(body);
+        }
+        circle.dispose();
+        return dropStore;
+    }
+
+    /**
+     * Median time of one liquid step in milliseconds. Velocities are reset first, so all kernels
+     * start from the same state and end with comparable results.
+     */
+    private static double measure(DropStore dropStore, int tableSize) {
+        LiquidHelper liquidHelper = new LiquidHelper(dropStore, false);
+        liquidHelper.setSymmetric(true);
+        liquidHelper.setKernelTableSize(tableSize);
+
+        for(int i = 0; i < WARMUP_STEPS; i++)
+            liquidHelper.applyLiquidConstraint(STEP);
+
+        double[] times = new double[MEASURED_STEPS];
+        for(int i = 0; i < MEASURED_STEPS; i++) {
+            long start = System.nanoTime();
+            liquidHelper.applyLiquidConstraint(STEP);
+            times[i] = (System.nanoTime() - start) / 1e6;
+        }
+
+        for(int i = 0; i < dropStore.size(); i++)
+            dropStore.setLinearVelocity(i, 0, 0);
+        liquidHelper.applyLiquidConstraint(STEP);
+        liquidHelper.dispose();
+
+        Arrays.sort(times);
+        return times[MEASURED_STEPS / 2];
+    }
+
+    private static float[] velocities(DropStore dropStore) {
+        float[] velocities = new float[dropStore.size() * 2];
+        for(int i = 0; i < dropStore.size(); i++) {
+            velocities[2 * i] = dropStore.getVelocityX(i);
+            velocities[2 * i + 1] = dropStore.getVelocityY(i);
+        }
+        return velocities;
+    }
+}
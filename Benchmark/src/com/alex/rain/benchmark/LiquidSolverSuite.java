@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright 2013 See AUTHORS file.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE V3
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.gnu.org/licenses/gpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.alex.rain.benchmark;
+
+import com.alex.rain.helpers.CellList;
+import com.alex.rain.helpers.LiquidSolver;
+import com.alex.rain.helpers.NeighborList;
+import com.alex.rain.models.DropStore;
+import com.alex.rain.simulation.GameSimulation;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+
+/**
+ * Runs every liquid solver on the same scenes and step times and checks that the water behaves.
+ * Cost is the solver time per step and per simulated second, the Box2D step is not counted.
+ * Density error is the highest compression of a drop over the last second, measured with one reference
+ * kernel for all solvers. A run fails when a drop gets a NaN position or leaves the basin, or when a
+ * settled basin still moves at the end. Arguments: drop counts, default 1000 5000.
+ */
+public class LiquidSolverSuite {
+    private static final String[] SOLVERS = {GameSimulation.LIQUID_DEFAULT, GameSimulation.LIQUID_PBF};
+    private static final float[] STEPS = {1 / 60f, 1 / 30f};
+    private static final DropScene.Distribution[] DISTRIBUTIONS = {DropScene.Distribution.BASIN, DropScene.Distribution.RAIN};
+    private static final float DURATION = 6;
+    private static final float REFERENCE_RADIUS = DropScene.SPACING * 2;
+    private static final float SETTLED_SPEED = (float)Math.sqrt(2 * 98 * DropScene.SPACING);
+
+    private static final CellList cellList = new CellList();
+    private static final NeighborList neighborList = new NeighborList(0);
+
+    public static void main(String[] args) {
+        GdxNativesLoader.load();
+
+        int[] counts = {1000, 5000};
+        if(args.length > 0) {
+            counts = new int[args.length];
+            for(int i = 0; i < args.length; i++)
+                counts[i] = Integer.parseInt(args[i]);
+        }
+
+        int failures = 0;
+        System.out.println("solver   drops distribution  step   ms/step   ms/second   density error   mean speed   result");
+        for(int count : counts)
+            for(DropScene.Distribution distribution : DISTRIBUTIONS)
+                for(float step : STEPS)
+                    for(String solver : SOLVERS)
+                        if(!run(solver, count, distribution, step))
+                            failures++;
+
+        System.out.println(failures == 0 ? "all runs passed" : failures + " runs failed");
+    }
+
+    private static boolean run(String name, int count, DropScene.Distribution distribution, float step) {
+        DropScene scene = new DropScene(count, distribution);
+        DropStore dropStore = scene.getDropStore();
+        LiquidSolver solver = GameSimulation.createLiquidSolver(name, dropStore, false, scene.getWorld().getGravity());
+
+        int steps = Math.round(DURATION / step);
+        int lastSecond = steps - Math.round(1 / step);
+        long time = 0;
+        float densityError = 0;
+        String failure = null;
+        for(int i = 0; i < steps && failure == null; i++) {
+            long start = System.nanoTime();
+            solver.applyLiquidConstraint(step);
+            time += System.nanoTime() - start;
+
+            scene.getWorld().step(step, 6, 3);
+            dropStore.readBodies();
+            failure = checkDrops(scene);
+            if(i >= lastSecond)
+                densityError = Math.max(densityError, maxDensityError(dropStore));
+        }
+
+        float meanSpeed = meanSpeed(dropStore);
+        if(failure == null && distribution == DropScene.Distribution.BASIN && meanSpeed > SETTLED_SPEED)
+            failure = "not settled";
+
+        double msPerStep = time / 1e6 / steps;
+        System.out.println(String.format("%-7s %6d %-12s 1/%-3d %8.3f %11.2f %14.1f%% %12.1f   %s", name, count,
+                distribution, Math.round(1 / step), msPerStep, msPerStep / step, densityError * 100, meanSpeed,
+                failure == null ? "ok" : "FAILED: " + failure));
+
+        solver.dispose();
+        scene.dispose();
+        return failure == null;
+    }
+
+    private static String checkDrops(DropScene scene) {
+        DropStore dropStore = scene.getDropStore();
+        for(int i = 0; i < dropStore.size(); i++) {
+            float x = dropStore.getX(i);
+            float y = dropStore.getY(i);
+            if(Float.isNaN(x) || Float.isNaN(y))
+                return "NaN position";
+            if(x < 0 || x > scene.getWidth() || y < 0)
+                return "drop left the basin";
+        }
+        return null;
+    }
+
+    /**
+     * Highest density of a drop relative to drops at rest spacing in a hexagonal lattice, minus one.
+     */
+    private static float maxDensityError(DropStore dropStore) {
+        int n = dropStore.size();
+        float[] xs = dropStore.getXs();
+        float[] ys = dropStore.getYs();
+        cellList.build(xs, ys, n, REFERENCE_RADIUS);
+        neighborList.build(cellList, xs, ys, n, REFERENCE_RADIUS);
+
+        int[] start = neighborList.getStart();
+        int[] neighbors = neighborList.getNeighbors();
+        float restDensity = restDensity();
+        float maxDensity = 0;
+        for(int i = 0; i < n; i++) {
+            float density = 1;
+            for(int a = start[i]; a < start[i + 1]; a++) {
+                int j = neighbors[a];
+                float dx = xs[i] - xs[j];
+                float dy = ys[i] - ys[j];
+                density += kernel(dx * dx + dy * dy);
+            }
+            maxDensity = Math.max(maxDensity, density);
+        }
+        return maxDensity / restDensity - 1;
+    }
+
+    private static float restDensity() {
+        float density = 1;
+        int rings = (int)Math.ceil(REFERENCE_RADIUS / DropScene.SPACING) + 1;
+        for(int row = -rings; row <= rings; row++)
+            for(int column = -rings; column <= rings; column++) {
+                float x = (column + (row & 1) * 0.5f) * DropScene.SPACING;
+                float y = row * DropScene.SPACING * (float)Math.sqrt(3) / 2;
+                if(x != 0 || y != 0)
+                    density += kernel(x * x + y * y);
+            }
+        return density;
+    }
+
+    private static float kernel(float distanceSq) {
+        float q = 1 - distanceSq / (REFERENCE_RADIUS * REFERENCE_RADIUS);
+        return q > 0 ? q * q * q : 0;
+    }
+
+    private static float meanSpeed(DropStore dropStore) {
+        float sum = 0;
+        for(int i = 0; i < dropStore.size(); i++)
+            sum += (float)Math.sqrt(dropStore.getVelocityX(i) * dropStore.getVelocityX(i) +
+                    dropStore.getVelocityY(i) * dropStore.getVelocityY(i));
+        return dropStore.size() == 0 ? 0 : sum / dropStore.size();
+    }
+}
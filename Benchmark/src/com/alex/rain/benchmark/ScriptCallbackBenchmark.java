@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright 2013 See AUTHORS file.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE V3
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.gnu.org/licenses/gpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.alex.rain.benchmark;
+
+import com.alex.rain.managers.ScriptManager;
+import com.alex.rain.simulation.GameSimulation;
+import com.alex.rain.simulation.LuaBindings;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+import org.luaj.vm2.LuaClosure;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.lib.jse.CoerceJavaToLua;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The Lua callbacks of a level for one frame, in the interpreter and compiled to JVM classes by luajc.
+ * The levels are the ones in Benchmark/data/callbacks, the shipped levels as they were before their winning
+ * conditions moved to Java: onCheck over a settled drop store, and for level4 onContacts with one contact.
+ * The drop store is bound either by reflection, as before the typed bindings, or by the typed bindings.
+ * luajc needs BCEL on the classpath, the benchmark fails instead of quietly measuring the interpreter twice.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ScriptCallbackBenchmark {
+    @Param({"level1", "level2", "level3", "level4", "level5"})
+    public String level;
+
+    @Param({"interpreter", "luajc"})
+    public String mode;
+
+    /** How onCheck reaches the drop store, through LuaJ's reflection or {@link LuaBindings} */
+    @Param({"reflection", "typed"})
+    public String binding;
+
+    private GameSimulation simulation;
+    private LuaValue onCheck;
+    private LuaValue onContacts;
+    private LuaValue luaDropStore;
+    private LuaTable contacts;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        GdxNativesLoader.load();
+        String data = System.getProperty("rain.data", "Android/assets/data");
+        String callbacks = System.getProperty("rain.callbacks", "Benchmark/data/callbacks");
+
+        ScriptManager scriptManager = ScriptManager.getInstance();
+        scriptManager.clear();
+        scriptManager.setCompileToJava(mode.equals("luajc"));
+        scriptManager.loadPrelude(read(new File(data, "main.lua")));
+        LuaValue script = scriptManager.run(read(new File(callbacks, level + ".lua")), level);
+        onCheck = script.get("onCheck");
+        onContacts = script.get("onContacts");
+        if(mode.equals("luajc") && onCheck instanceof LuaClosure)
+            throw new IllegalStateException("luajc is not available, put BCEL on the classpath");
+
+        simulation = new GameSimulation(script);
+        simulation.createWorld();
+        simulation.setRaining(true);
+        for(int i = 0; i < 300; i++)
+            simulation.addDrop(250 + (i % 20) * 9, 250 + (i / 20) * 9);
+        for(int i = 0; i < 120; i++)
+            simulation.update(1 / 60f);
+        if(binding.equals("typed"))
+            luaDropStore = LuaBindings.bind(simulation.getDropStore());
+        else
+            luaDropStore = CoerceJavaToLua.coerce(simulation.getDropStore());
+
+        // The home and the hammer of level4 touching
+        contacts = new LuaTable();
+        if(onContacts.isfunction()) {
+            LuaTable contact = new LuaTable();
+            contact.set("a", script.get("dynamicActorTmp"));
+            contact.set("b", script.get("dynamicActor"));
+            contact.set("began", LuaValue.FALSE);
+            contacts.set(1, contact);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        simulation.dispose();
+        ScriptManager.getInstance().setCompileToJava(false);
+        ScriptManager.getInstance().clear();
+    }
+
+    private static String read(File file) throws IOException {
+        Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+        StringBuilder builder = new StringBuilder();
+        char[] buffer = new char[4096];
+        try {
+            int n;
+            while((n = reader.read(buffer)) != -1)
+                builder.append(buffer, 0, n);
+        } finally {
+            reader.close();
+        }
+        return builder.toString();
+    }
+
+    @Benchmark
+    public LuaValue frame() {
+        if(onContacts.isfunction())
+            onContacts.call(contacts);
+        return onCheck.call(luaDropStore);
+    }
+}
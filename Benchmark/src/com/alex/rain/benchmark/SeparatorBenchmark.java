@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * Copyright 2013 See AUTHORS file.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE V3
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.gnu.org/licenses/gpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.alex.rain.benchmark;
+
+import com.alex.rain.helpers.Box2DSeparatorHelper;
+import com.alex.rain.models.Ground;
+import com.alex.rain.models.SimpleActor;
+import com.alex.rain.simulation.GameSimulation;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.*;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decomposing the ground polygons of a level into convex fixtures. The level is loaded by a headless
+ * simulation from the directory in the rain.data property, Android/assets/data by default.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SeparatorBenchmark {
+    @Param({"level1", "level2", "level3", "level5", "test"})
+    public String level;
+
+    private final List<List<Vector2>> polygons = new ArrayList<List<Vector2>>();
+    private final Box2DSeparatorHelper separatorHelper = new Box2DSeparatorHelper();
+    private final FixtureDef fixtureDef = new FixtureDef();
+    private World world;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        GdxNativesLoader.load();
+        String data = System.getProperty("rain.data", "Android/assets/data");
+        GameSimulation simulation = new GameSimulation(new StringReader(
+                read(new File(data, "main.lua")) + read(new File(data, level + ".lua"))));
+        simulation.createWorld();
+        for(SimpleActor actor : simulation.getActors()) {
+            if(actor.getType() != SimpleActor.TYPE.GROUND)
+                continue;
+
+            List<Vector2> polygon = new ArrayList<Vector2>();
+            for(Vector2 v : ((Ground)actor).getVertices())
+                polygon.add(v.cpy().scl(GameSimulation.WORLD_TO_BOX));
+            polygons.add(polygon);
+        }
+        simulation.dispose();
+
+        world = new World(new Vector2(0, -9.8f), true);
+        fixtureDef.friction = 10.4f;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        world.dispose();
+    }
+
+    private static String read(File file) throws IOException {
+        Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+        StringBuilder builder = new StringBuilder();
+        char[] buffer = new char[4096];
+        try {
+            int n;
+            while((n = reader.read(buffer)) != -1)
+                builder.append(buffer, 0, n);
+        } finally {
+            reader.close();
+        }
+        return builder.toString();
+    }
+
+    /**
+     * All ground bodies of the level, the same work as loading it.
+     */
+    @Benchmark
+    public int separate() {
+        int fixtures = 0;
+        for(List<Vector2> polygon : polygons) {
+            Body body = world.createBody(new BodyDef());
+            separatorHelper.Separate(body, fixtureDef, polygon, 30);
+            fixtures += body.getFixtureList().size;
+            world.destroyBody(body);
+        }
+        return fixtures;
+    }
+}
@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright 2013 See AUTHORS file.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE V3
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.gnu.org/licenses/gpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.alex.rain.benchmark;
+
+import com.alex.rain.models.SimpleActor;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Box2D steps of the drops in their basin, with the iterations the game uses and without liquid forces.
+ * Every iteration starts from a new scene and runs one second of game time, the score is for all 60 steps.
+ * With particles the drops have no bodies and the step is the one of the particle collider.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, batchSize = 60)
+@Measurement(iterations = 10, batchSize = 60)
+@Fork(1)
+public class WorldStepBenchmark {
+    @Param({"1000", "5000", "20000"})
+    public int count;
+
+    @Param({"RAIN", "BASIN", "UNIFORM"})
+    public DropScene.Distribution distribution;
+
+    @Param({"false", "true"})
+    public boolean particles;
+
+    private DropScene scene;
+
+    @Setup(Level.Trial)
+    public void loadNatives() {
+        GdxNativesLoader.load();
+    }
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        scene = new DropScene(count, distribution, particles);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        scene.dispose();
+    }
+
+    @Benchmark
+    public void step() {
+        if(particles)
+            scene.getParticleCollider().update(1 / 60f, Collections.<SimpleActor>emptyList());
+        scene.getWorld().step(1 / 60f, 6, 3);
+        scene.getDropStore().readBodies();
+    }
+}
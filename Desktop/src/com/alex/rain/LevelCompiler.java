@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright 2013 See AUTHORS file.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE V3
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.gnu.org/licenses/gpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.alex.rain;
+
+import com.alex.rain.simulation.CompiledLevel;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+
+import java.io.*;
+
+/**
+ * Compiles levels into .level files next to them, which the game loads instead of running their onCreate.
+ * Takes level scripts, or the addVertex lines LevelCreator/polygon.html prints saved as a .txt file, which
+ * become one ground:
+ * <pre>
+ * java com.alex.rain.LevelCompiler Android/assets/data level1.lua level2.lua cave.txt
+ * </pre>
+ * Compile the levels again after changing their scripts or main.lua, the game runs the script while the .level
+ * is older. Levels whose onCreate does more than a .level can hold are not compiled, see {@link CompiledLevel}.
+ */
+public class LevelCompiler {
+    public static void main(String[] args) throws IOException {
+        if(args.length < 2) {
+            System.out.println("usage: LevelCompiler <data directory> <level.lua or vertices.txt>...");
+            return;
+        }
+
+        GdxNativesLoader.load();
+        File data = new File(args[0]);
+        String prelude = read(new File(data, "main.lua"));
+        for(int i = 1; i < args.length; i++) {
+            File file = new File(args[i]);
+            if(!file.exists())
+                file = new File(data, args[i]);
+            String name = file.getName().substring(0, file.getName().lastIndexOf('.'));
+            String source = read(file);
+
+            File out = new File(file.getParentFile(), name + ".level");
+            CompiledLevel level;
+            try {
+                if(file.getName().endsWith(".txt")) {
+                    source = "function onCreate(world)\n    ground = create(Ground)\n" + source.replace("<br/>", "\n") +
+                            "\n    world:add(ground)\nend\n";
+                    level = CompiledLevel.compile(prelude, source, "");
+                } else {
+                    level = CompiledLevel.compile(prelude, source, CompiledLevel.hash(prelude, source));
+                }
+            } catch(IllegalArgumentException e) {
+                // An old .level would be loaded in place of the script
+                out.delete();
+                System.out.println("error: " + file + " not compiled, " + e.getMessage());
+                continue;
+            }
+
+            OutputStream stream = new BufferedOutputStream(new FileOutputStream(out));
+            try {
+                level.write(stream);
+            } finally {
+                stream.close();
+            }
+            System.out.println(out + ": " + level.getActorCount() + " actors, " + level.getDropCount() + " drops, " +
+                    out.length() + " bytes");
+        }
+    }
+
+    private static String read(File file) throws IOException {
+        Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+        try {
+            StringBuilder text = new StringBuilder();
+            char[] buffer = new char[4096];
+            for(int n; (n = reader.read(buffer)) > 0; )
+                text.append(buffer, 0, n);
+            return text.toString();
+        } finally {
+            reader.close();
+        }
+    }
+}
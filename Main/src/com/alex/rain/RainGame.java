@@ -13,6 +13,7 @@
  ******************************************************************************/
 package com.alex.rain;
 
+import com.alex.rain.managers.ScriptManager;
 import com.alex.rain.managers.TextureManager;
 import com.alex.rain.screens.GameScreen;
 import com.alex.rain.stages.GameWorld;
@@ -23,6 +24,8 @@ import com.badlogic.gdx.Screen;
 import com.badlogic.gdx.graphics.GL10;
 import com.badlogic.gdx.scenes.scene2d.Stage;
 
+import java.io.File;
+
 public class RainGame extends Game {
     Screen screen;
     Stage stage;
@@ -41,6 +44,15 @@ public class RainGame extends Game {
     public void create() {
         lightVersion = Gdx.app.getType() != Application.ApplicationType.Desktop;
         TextureManager.getInstance().getAtlas("pack.atlas");
+        String scriptCache = System.getProperty("rain.lua.cache");
+        if(scriptCache != null)
+            ScriptManager.getInstance().setCacheDirectory(new File(scriptCache));
+        ScriptManager.getInstance().setCompileToJava(Boolean.getBoolean("rain.lua.luajc"));
+        ScriptManager.getInstance().setInstructionBudget(Integer.getInteger("rain.lua.budget",
+                ScriptManager.getInstance().getInstructionBudget()));
+        String timeBudget = System.getProperty("rain.lua.budgetMs");
+        if(timeBudget != null)
+            ScriptManager.getInstance().setTimeBudget(Float.parseFloat(timeBudget));
 
         GameWorld gameWorld = new GameWorld("test");
         gameWorld.createWorld();
@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright 2013 See AUTHORS file.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE V3
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.gnu.org/licenses/gpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.alex.rain.helpers;
+
+/**
+ * Uniform grid over the bounding box of the particles, rebuilt with a counting sort.
+ * Cells are numbered column by column, so particles of neighbouring rows and of whole columns
+ * are contiguous in the sorted index array.
+ */
+public class CellList {
+    private float minX, minY;
+    private float cellSize;
+    private float invCellSize;
+    private int columns, rows;
+    private int[] cellStart = new int[1];
+    private int[] cellFill = new int[1];
+    private int[] sortedIndices = new int[0];
+    private int[] particleCells = new int[0];
+
+    /**
+     * @param radius minimal cell size, neighbours closer than radius are always in the adjacent cells
+     */
+    public void build(float[] xs, float[] ys, int n, float radius) {
+        if(sortedIndices.length < n) {
+            sortedIndices = new int[n];
+            particleCells = new int[n];
+        }
+
+        if(n == 0) {
+            columns = rows = 0;
+            cellStart[0] = 0;
+            return;
+        }
+
+        float maxX = xs[0], maxY = ys[0];
+        minX = xs[0];
+        minY = ys[0];
+        for(int i = 1; i < n; i++) {
+            if(xs[i] < minX) minX = xs[i];
+            if(xs[i] > maxX) maxX = xs[i];
+            if(ys[i] < minY) minY = ys[i];
+            if(ys[i] > maxY) maxY = ys[i];
+        }
+
+        // Keep the cell count within a few cells per particle, however sparse the drops are
+        float width = maxX - minX;
+        float height = maxY - minY;
+        cellSize = Math.max(radius, (float)Math.sqrt(width * height / (2 * n)));
+        cellSize = Math.max(cellSize, Math.max(width, height) / (2 * n));
+        invCellSize = 1 / cellSize;
+        columns = (int)(width * invCellSize) + 1;
+        rows = (int)(height * invCellSize) + 1;
+
+        int cells = columns * rows;
+        if(cellStart.length < cells + 1) {
+            cellStart = new int[cells + 1];
+            cellFill = new int[cells];
+        }
+
+        for(int c = 0; c <= cells; c++)
+            cellStart[c] = 0;
+        for(int i = 0; i < n; i++) {
+            int cell = column(xs[i]) * rows + row(ys[i]);
+            particleCells[i] = cell;
+            cellStart[cell + 1]++;
+        }
+        for(int c = 0; c < cells; c++) {
+            cellStart[c + 1] += cellStart[c];
+            cellFill[c] = cellStart[c];
+        }
+        for(int i = 0; i < n; i++)
+            sortedIndices[cellFill[particleCells[i]]++] = i;
+    }
+
+    public int column(float x) {
+        int c = (int)((x - minX) * invCellSize);
+        return c < 0 ? 0 : (c >= columns ? columns - 1 : c);
+    }
+
+    public int row(float y) {
+        int r = (int)((y - minY) * invCellSize);
+        return r < 0 ? 0 : (r >= rows ? rows - 1 : r);
+    }
+
+    public int getParticleCell(int i) {
+        return particleCells[i];
+    }
+
+    /**
+     * Particles of cell c are sortedIndices[cellStart[c]] .. sortedIndices[cellStart[c + 1] - 1].
+     */
+    public int[] getCellStart() {
+        return cellStart;
+    }
+
+    public int[] getSortedIndices() {
+        return sortedIndices;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public float getMinX() {
+        return minX;
+    }
+
+    public float getMinY() {
+        return minY;
+    }
+
+    public float getCellSize() {
+        return cellSize;
+    }
+}
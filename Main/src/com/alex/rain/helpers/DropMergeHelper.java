@@ -0,0 +1,257 @@
+/*******************************************************************************
+ * Copyright 2013 See AUTHORS file.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE V3
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.gnu.org/licenses/gpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.alex.rain.helpers;
+
+import com.alex.rain.models.DropStore;
+import com.alex.rain.simulation.GameSimulation;
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.Fixture;
+import com.badlogic.gdx.utils.IntArray;
+
+/**
+ * Level of detail for pooled water. Sleeping drops deep inside a pool are merged into heavier particles
+ * with a larger body, which split back into standard drops when they wake or get near a surface.
+ * Mass and momentum are kept on both ways. Works together with sleeping of the {@link LiquidSolver}.
+ */
+public class DropMergeHelper {
+    private final DropStore dropStore;
+    private final DropRecycler dropRecycler;
+    private final LiquidSolver liquidSolver;
+    private final int MERGE_INTERVAL = 30;
+    private int maxMass = 4;
+    private int steps;
+    private int mergedCount;
+    private final IntArray removed = new IntArray();
+    private final IntArray candidates = new IntArray();
+
+    public DropMergeHelper(DropRecycler dropRecycler, LiquidSolver liquidSolver) {
+        this.dropRecycler = dropRecycler;
+        this.dropStore = dropRecycler.getDropStore();
+        this.liquidSolver = liquidSolver;
+    }
+
+    /**
+     * Maximal number of drops in one merged particle.
+     */
+    public void setMaxMass(int maxMass) {
+        this.maxMass = maxMass;
+    }
+
+    public int getMaxMass() {
+        return maxMass;
+    }
+
+    /**
+     * Number of merged particles after the last update.
+     */
+    public int getMergedCount() {
+        return mergedCount;
+    }
+
+    /**
+     * Called after the liquid constraint, uses the cells and sleeping state of that step.
+     */
+    public void update() {
+        final int n = dropStore.size();
+        final CellList cellList = liquidSolver.getCellList();
+        // Splitting only appends drops, the indices of the cells stay valid for merging.
+        // Only drops with a body are ever merged, so split and dropDiameter never see a particle.
+        if(mergedCount > 0)
+            for(int i = 0; i < n; i++)
+                if(dropStore.getMass(i) > 1 && (!liquidSolver.isAsleep(i) || isSurface(cellList.getParticleCell(i))))
+                    split(i);
+
+        if(++steps >= MERGE_INTERVAL) {
+            steps = 0;
+            mergeCells(cellList);
+        }
+
+        mergedCount = 0;
+        for(int i = 0, size = dropStore.size(); i < size; i++)
+            if(dropStore.getMass(i) > 1)
+                mergedCount++;
+    }
+
+    /**
+     * Splits all merged particles, used when the mode is switched off.
+     */
+    public void splitAll() {
+        for(int i = 0, n = dropStore.size(); i < n; i++)
+            if(dropStore.getMass(i) > 1)
+                split(i);
+        mergedCount = 0;
+    }
+
+    /**
+     * A cell is deep when it and all cells around it hold sleeping drops.
+     */
+    private boolean isDeep(int cell) {
+        return !isSurface(cell) && !isNearAwake(cell);
+    }
+
+    /**
+     * A cell is at the surface when some cell around it is empty or outside of the grid.
+     */
+    private boolean isSurface(int cell) {
+        final CellList cellList = liquidSolver.getCellList();
+        final int rows = cellList.getRows();
+        final int[] cellStart = cellList.getCellStart();
+        int column = cell / rows;
+        int row = cell % rows;
+        if(column == 0 || row == 0 || column == cellList.getColumns() - 1 || row == rows - 1)
+            return true;
+
+        for(int xc = column - 1; xc <= column + 1; xc++)
+            for(int yc = row - 1; yc <= row + 1; yc++)
+                if(cellStart[xc * rows + yc] == cellStart[xc * rows + yc + 1])
+                    return true;
+        return false;
+    }
+
+    private boolean isNearAwake(int cell) {
+        final int rows = liquidSolver.getCellList().getRows();
+        int column = cell / rows;
+        int row = cell % rows;
+        for(int xc = column - 1; xc <= column + 1; xc++)
+            for(int yc = row - 1; yc <= row + 1; yc++)
+                if(liquidSolver.isCellAwake(xc * rows + yc))
+                    return true;
+        return false;
+    }
+
+    private void mergeCells(CellList cellList) {
+        final int cells = cellList.getColumns() * cellList.getRows();
+        final int[] cellStart = cellList.getCellStart();
+        final int[] sortedIndices = cellList.getSortedIndices();
+        removed.clear();
+        for(int c = 0; c < cells; c++) {
+            if(cellStart[c + 1] - cellStart[c] < 2 || !isDeep(c))
+                continue;
+
+            candidates.clear();
+            for(int a = cellStart[c]; a < cellStart[c + 1]; a++) {
+                int i = sortedIndices[a];
+                // Particles have no body to grow, they stay standard drops
+                if(dropStore.isParticle(i))
+                    continue;
+                if(liquidSolver.isAsleep(i) && !dropStore.getBody(i).isAwake() && dropStore.getMass(i) < maxMass)
+                    candidates.add(i);
+            }
+
+            while(candidates.size > 1) {
+                int target = candidates.removeIndex(0);
+                // Only the closest drops, the grown body has to fit into the space they leave
+                float maxDistance = 1.5f * dropDiameter(target);
+                int nearest;
+                while((nearest = nearestCandidate(target, maxDistance)) != -1 &&
+                        dropStore.getMass(target) + dropStore.getMass(candidates.get(nearest)) <= maxMass) {
+                    int i = candidates.removeIndex(nearest);
+                    merge(target, i);
+                    removed.add(i);
+                }
+            }
+        }
+        if(removed.size == 0)
+            return;
+
+        // Remove from the highest index, so the drop moved into a freed slot is never one to remove
+        removed.sort();
+        for(int r = removed.size - 1; r >= 0; r--)
+            dropRecycler.free(removed.get(r));
+        // Box2D wakes both bodies of every touching contact it destroys, also when deactivating a body
+        for(int i = 0, n = dropStore.size(); i < n; i++)
+            if(liquidSolver.isAsleep(i) && !dropStore.isParticle(i))
+                dropStore.getBody(i).setAwake(false);
+    }
+
+    /**
+     * Diameter of a standard drop, in world units.
+     */
+    private float dropDiameter(int i) {
+        float radius = dropStore.getBody(i).getFixtureList().get(0).getShape().getRadius();
+        return 2 * radius * GameSimulation.BOX_TO_WORLD / (float)Math.sqrt(dropStore.getMass(i));
+    }
+
+    private int nearestCandidate(int target, float maxDistance) {
+        int nearest = -1;
+        float nearestSq = maxDistance * maxDistance;
+        for(int k = 0; k < candidates.size; k++) {
+            int i = candidates.get(k);
+            float dx = dropStore.getX(i) - dropStore.getX(target);
+            float dy = dropStore.getY(i) - dropStore.getY(target);
+            if(dx * dx + dy * dy < nearestSq) {
+                nearestSq = dx * dx + dy * dy;
+                nearest = k;
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * Moves drop i into target at the center of mass, drop i has to be removed afterwards.
+     */
+    private void merge(int target, int i) {
+        float targetMass = dropStore.getMass(target);
+        float mass = targetMass + dropStore.getMass(i);
+        float x = (dropStore.getX(target) * targetMass + dropStore.getX(i) * dropStore.getMass(i)) / mass;
+        float y = (dropStore.getY(target) * targetMass + dropStore.getY(i) * dropStore.getMass(i)) / mass;
+        float vx = (dropStore.getVelocityX(target) * targetMass + dropStore.getVelocityX(i) * dropStore.getMass(i)) / mass;
+        float vy = (dropStore.getVelocityY(target) * targetMass + dropStore.getVelocityY(i) * dropStore.getMass(i)) / mass;
+
+        Body body = dropStore.getBody(target);
+        Fixture fixture = body.getFixtureList().get(0);
+        // Same density, so the area grows with the mass
+        fixture.getShape().setRadius(fixture.getShape().getRadius() * (float)Math.sqrt(mass / targetMass));
+        body.resetMassData();
+        dropStore.setMass(target, mass);
+        dropStore.setPosition(target, x, y);
+        dropStore.setLinearVelocity(target, vx, vy);
+    }
+
+    /**
+     * Replaces merged particle i by standard drops on a ring over its lowest point, all with its velocity.
+     */
+    private void split(int i) {
+        int count = Math.round(dropStore.getMass(i));
+        float x = dropStore.getX(i);
+        float y = dropStore.getY(i);
+        float vx = dropStore.getVelocityX(i);
+        float vy = dropStore.getVelocityY(i);
+
+        Body body = dropStore.getBody(i);
+        Fixture fixture = body.getFixtureList().get(0);
+        float mergedRadius = fixture.getShape().getRadius();
+        float radius = mergedRadius / (float)Math.sqrt(dropStore.getMass(i));
+        fixture.getShape().setRadius(radius);
+        body.resetMassData();
+        body.setAwake(true);
+        dropStore.setMass(i, 1);
+
+        // Neighbouring drops on the ring just touch. The ring starts with its lowest drop, which sits where the
+        // merged particle touched the ground, so no drop is pushed into it.
+        float ring = count > 1 ? radius * GameSimulation.BOX_TO_WORLD / (float)Math.sin(Math.PI / count) : 0;
+        y += (radius - mergedRadius) * GameSimulation.BOX_TO_WORLD + ring;
+        for(int k = 0; k < count; k++) {
+            double angle = 2 * Math.PI * k / count - Math.PI / 2;
+            float dx = ring * (float)Math.cos(angle);
+            float dy = ring * (float)Math.sin(angle);
+            if(k > 0) {
+                dropRecycler.obtain(x + dx, y + dy, vx, vy);
+            } else {
+                dropStore.setPosition(i, x + dx, y + dy);
+                dropStore.setLinearVelocity(i, vx, vy);
+            }
+        }
+    }
+}
@@ -0,0 +1,290 @@
+/*******************************************************************************
+ * Copyright 2013 See AUTHORS file.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE V3
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.gnu.org/licenses/gpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.alex.rain.helpers;
+
+import com.alex.rain.models.DropStore;
+
+/**
+ * Counts the drops, their mass and their velocity inside rectangles and polygons. The drops are sorted into
+ * a {@link CellList} with the sum of every cell, once per step on the first query. Cells wholly inside the
+ * region are taken as a whole, only drops of the cells on its border are tested one by one, so a query
+ * costs the cells it covers instead of all drops. All lengths are in world units.
+ * <p>
+ * The cell list of the liquid solver is built before the Box2D step and the culling, by the time the level
+ * checks its drops its indices are out of date, so the query keeps its own.
+ */
+public class DropQuery {
+    /** Smallest cell, the cell list makes them bigger for sparse drops. */
+    private static final float MIN_CELL_SIZE = 30;
+
+    private final DropStore dropStore;
+    private final CellList cellList = new CellList();
+    private float[] cellMass = new float[0];
+    private float[] cellVx = new float[0];
+    private float[] cellVy = new float[0];
+    private boolean valid;
+    private int builtSize;
+
+    private int count;
+    private float mass;
+    private float vx, vy;
+    private float clipStart, clipEnd;
+
+    public DropQuery(DropStore dropStore) {
+        this.dropStore = dropStore;
+    }
+
+    /**
+     * Drops moved, the next query sorts them again.
+     */
+    public void invalidate() {
+        valid = false;
+    }
+
+    private void update() {
+        int n = dropStore.size();
+        if(valid && builtSize == n)
+            return;
+
+        final float[] xs = dropStore.getXs();
+        final float[] ys = dropStore.getYs();
+        final float[] masses = dropStore.getMasses();
+        final float[] vxs = dropStore.getVelocitiesX();
+        final float[] vys = dropStore.getVelocitiesY();
+        cellList.build(xs, ys, n, MIN_CELL_SIZE);
+
+        int cells = cellList.getColumns() * cellList.getRows();
+        if(cellMass.length < cells) {
+            cellMass = new float[cells];
+            cellVx = new float[cells];
+            cellVy = new float[cells];
+        }
+        for(int c = 0; c < cells; c++) {
+            cellMass[c] = 0;
+            cellVx[c] = 0;
+            cellVy[c] = 0;
+        }
+        for(int i = 0; i < n; i++) {
+            int c = cellList.getParticleCell(i);
+            cellMass[c] += masses[i];
+            cellVx[c] += masses[i] * vxs[i];
+            cellVy[c] += masses[i] * vys[i];
+        }
+
+        builtSize = n;
+        valid = true;
+    }
+
+    /**
+     * Sums up the drops inside the rectangle, read the result with the getters.
+     */
+    public void queryRectangle(float x, float y, float width, float height) {
+        update();
+        clear();
+        float maxX = x + width;
+        float maxY = y + height;
+        if(!overlapsGrid(x, y, maxX, maxY))
+            return;
+
+        final float[] xs = dropStore.getXs();
+        final float[] ys = dropStore.getYs();
+        final int[] cellStart = cellList.getCellStart();
+        final int[] sortedIndices = cellList.getSortedIndices();
+        int rows = cellList.getRows();
+        float cellSize = cellList.getCellSize();
+        for(int column = cellList.column(x); column <= cellList.column(maxX); column++) {
+            float cellMinX = cellList.getMinX() + column * cellSize;
+            boolean insideX = cellMinX >= x && cellMinX + cellSize <= maxX;
+            for(int row = cellList.row(y); row <= cellList.row(maxY); row++) {
+                float cellMinY = cellList.getMinY() + row * cellSize;
+                int c = column * rows + row;
+                if(insideX && cellMinY >= y && cellMinY + cellSize <= maxY) {
+                    addCell(c, cellStart);
+                    continue;
+                }
+                for(int j = cellStart[c]; j < cellStart[c + 1]; j++) {
+                    int i = sortedIndices[j];
+                    if(xs[i] > x && xs[i] < maxX && ys[i] > y && ys[i] < maxY)
+                        addDrop(i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sums up the drops inside the polygon x1, y1, x2, y2, ..., which may be concave.
+     */
+    public void queryPolygon(float[] vertices) {
+        update();
+        clear();
+        if(vertices.length < 6)
+            return;
+
+        float minX = vertices[0], maxX = vertices[0];
+        float minY = vertices[1], maxY = vertices[1];
+        for(int v = 2; v < vertices.length - 1; v += 2) {
+            minX = Math.min(minX, vertices[v]);
+            maxX = Math.max(maxX, vertices[v]);
+            minY = Math.min(minY, vertices[v + 1]);
+            maxY = Math.max(maxY, vertices[v + 1]);
+        }
+        if(!overlapsGrid(minX, minY, maxX, maxY))
+            return;
+
+        final float[] xs = dropStore.getXs();
+        final float[] ys = dropStore.getYs();
+        final int[] cellStart = cellList.getCellStart();
+        final int[] sortedIndices = cellList.getSortedIndices();
+        int rows = cellList.getRows();
+        float cellSize = cellList.getCellSize();
+        for(int column = cellList.column(minX); column <= cellList.column(maxX); column++) {
+            float cellMinX = cellList.getMinX() + column * cellSize;
+            for(int row = cellList.row(minY); row <= cellList.row(maxY); row++) {
+                float cellMinY = cellList.getMinY() + row * cellSize;
+                int c = column * rows + row;
+                if(cellStart[c] == cellStart[c + 1])
+                    continue;
+                // A cell no edge passes through is wholly inside or wholly outside
+                if(!crossesEdge(vertices, cellMinX, cellMinY, cellMinX + cellSize, cellMinY + cellSize)) {
+                    if(contains(vertices, cellMinX + cellSize / 2, cellMinY + cellSize / 2))
+                        addCell(c, cellStart);
+                    continue;
+                }
+                for(int j = cellStart[c]; j < cellStart[c + 1]; j++) {
+                    int i = sortedIndices[j];
+                    if(contains(vertices, xs[i], ys[i]))
+                        addDrop(i);
+                }
+            }
+        }
+    }
+
+    private boolean overlapsGrid(float minX, float minY, float maxX, float maxY) {
+        if(cellList.getColumns() == 0)
+            return false;
+        float gridMaxX = cellList.getMinX() + cellList.getColumns() * cellList.getCellSize();
+        float gridMaxY = cellList.getMinY() + cellList.getRows() * cellList.getCellSize();
+        return maxX >= cellList.getMinX() && minX <= gridMaxX && maxY >= cellList.getMinY() && minY <= gridMaxY;
+    }
+
+    private void clear() {
+        count = 0;
+        mass = vx = vy = 0;
+    }
+
+    private void addCell(int c, int[] cellStart) {
+        count += cellStart[c + 1] - cellStart[c];
+        mass += cellMass[c];
+        vx += cellVx[c];
+        vy += cellVy[c];
+    }
+
+    private void addDrop(int i) {
+        float m = dropStore.getMass(i);
+        count++;
+        mass += m;
+        vx += m * dropStore.getVelocityX(i);
+        vy += m * dropStore.getVelocityY(i);
+    }
+
+    /**
+     * Even-odd rule.
+     */
+    public static boolean contains(float[] vertices, float x, float y) {
+        boolean inside = false;
+        int n = vertices.length / 2;
+        for(int i = 0, j = n - 1; i < n; j = i++) {
+            float xi = vertices[i * 2], yi = vertices[i * 2 + 1];
+            float xj = vertices[j * 2], yj = vertices[j * 2 + 1];
+            if((yi > y) != (yj > y) && x < (xj - xi) * (y - yi) / (yj - yi) + xi)
+                inside = !inside;
+        }
+        return inside;
+    }
+
+    private boolean crossesEdge(float[] vertices, float minX, float minY, float maxX, float maxY) {
+        int n = vertices.length / 2;
+        for(int i = 0, j = n - 1; i < n; j = i++)
+            if(segmentHitsBox(vertices[j * 2], vertices[j * 2 + 1], vertices[i * 2], vertices[i * 2 + 1],
+                    minX, minY, maxX, maxY))
+                return true;
+        return false;
+    }
+
+    /**
+     * Clips the segment against the box, Liang-Barsky.
+     */
+    private boolean segmentHitsBox(float x0, float y0, float x1, float y1,
+                                   float minX, float minY, float maxX, float maxY) {
+        float dx = x1 - x0, dy = y1 - y0;
+        clipStart = 0;
+        clipEnd = 1;
+        return clip(-dx, x0 - minX) && clip(dx, maxX - x0) && clip(-dy, y0 - minY) && clip(dy, maxY - y0);
+    }
+
+    private boolean clip(float p, float q) {
+        if(p == 0)
+            return q >= 0;
+        float t = q / p;
+        if(p < 0) {
+            if(t > clipEnd)
+                return false;
+            if(t > clipStart)
+                clipStart = t;
+        } else {
+            if(t < clipStart)
+                return false;
+            if(t < clipEnd)
+                clipEnd = t;
+        }
+        return true;
+    }
+
+    /**
+     * Store entries inside the region of the last query, a merged drop is one entry. {@link #getMass()} is the
+     * water in standard drops.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Water inside the region of the last query, a merged drop counts as much as the drops it was made of.
+     */
+    public float getMass() {
+        return mass;
+    }
+
+    /**
+     * Average velocity of the water of the last query weighted by mass, 0 without drops.
+     */
+    public float getVelocityX() {
+        return mass > 0 ? vx / mass : 0;
+    }
+
+    public float getVelocityY() {
+        return mass > 0 ? vy / mass : 0;
+    }
+
+    /**
+     * Area of the polygon x1, y1, x2, y2, ...
+     */
+    public static float getArea(float[] vertices) {
+        float area = 0;
+        int n = vertices.length / 2;
+        for(int i = 0, j = n - 1; i < n; j = i++)
+            area += vertices[j * 2] * vertices[i * 2 + 1] - vertices[i * 2] * vertices[j * 2 + 1];
+        return Math.abs(area) / 2;
+    }
+}
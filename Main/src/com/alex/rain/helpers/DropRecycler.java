@@ -0,0 +1,241 @@
+/*******************************************************************************
+ * Copyright 2013 See AUTHORS file.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE V3
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.gnu.org/licenses/gpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.alex.rain.helpers;
+
+import com.alex.rain.models.Drop;
+import com.alex.rain.models.DropStore;
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.Fixture;
+import com.badlogic.gdx.physics.box2d.World;
+import com.badlogic.gdx.utils.Array;
+
+/**
+ * Pool of drop bodies. Removed drops keep their body deactivated in the world and the next spawned drop
+ * takes it back, so spawning creates no Box2D bodies once the pool is warm. Drops leaving the kill region,
+ * or sleeping outside of the view, are culled into the pool every step. All lengths are in world units.
+ * In particle mode new drops are particles without a body, which need no pool.
+ */
+public class DropRecycler {
+    private final World world;
+    private final DropStore dropStore;
+    private final Array<Body> free = new Array<Body>();
+    // Bodies made in one go and reused bodies refer to this drop, its only use is the type
+    private final Drop bodyDrop = new Drop();
+    private Body[] bodies = new Body[0];
+    private boolean particles;
+    private float killMinX = -100, killMinY = -100, killMaxX = 900, killMaxY = Float.MAX_VALUE;
+    private float viewMinX = 0, viewMinY = 0, viewMaxX = 800, viewMaxY = 480;
+    private int spawned;
+    private int created;
+    private int culled;
+    private long spawnTime;
+
+    public DropRecycler(World world, DropStore dropStore) {
+        this.world = world;
+        this.dropStore = dropStore;
+    }
+
+    /**
+     * Drops outside of this region are culled whether they move or not.
+     */
+    public void setKillRegion(float minX, float minY, float maxX, float maxY) {
+        killMinX = minX;
+        killMinY = minY;
+        killMaxX = maxX;
+        killMaxY = maxY;
+    }
+
+    /**
+     * @return minX, minY, maxX and maxY of the kill region
+     */
+    public float[] getKillRegion() {
+        return new float[] {killMinX, killMinY, killMaxX, killMaxY};
+    }
+
+    /**
+     * Sleeping drops outside of the view are culled, nothing would ever wake them.
+     */
+    public void setView(float minX, float minY, float maxX, float maxY) {
+        viewMinX = minX;
+        viewMinY = minY;
+        viewMaxX = maxX;
+        viewMaxY = maxY;
+    }
+
+    /**
+     * Drops spawned from now on are particles, drops already in the world keep their bodies.
+     */
+    public void setParticles(boolean particles) {
+        this.particles = particles;
+    }
+
+    public boolean isParticles() {
+        return particles;
+    }
+
+    /**
+     * Adds a standard drop, reusing a pooled body when there is one.
+     * @return index of the drop in the store
+     */
+    public int obtain(float x, float y, float vx, float vy) {
+        long start = System.nanoTime();
+        if(particles) {
+            int i = dropStore.add(x, y);
+            dropStore.setLinearVelocity(i, vx, vy);
+            spawned++;
+            spawnTime += System.nanoTime() - start;
+            return i;
+        }
+
+        Body body;
+        if(free.size > 0) {
+            body = reuse();
+        } else {
+            Drop drop = new Drop();
+            drop.createPhysicsActor(world);
+            body = drop.getBody();
+            body.setUserData(drop);
+            created++;
+        }
+        int i = dropStore.add(body);
+        dropStore.setPosition(i, x, y);
+        dropStore.setLinearVelocity(i, vx, vy);
+
+        spawned++;
+        spawnTime += System.nanoTime() - start;
+        return i;
+    }
+
+    /**
+     * Adds count standard drops at the packed world positions x1, y1, x2, y2, ... starting at xy[offset].
+     * The store grows once, pooled bodies are used first and the missing bodies are made in one go.
+     * @return index of the first drop in the store, the others follow it
+     */
+    public int obtain(float[] xy, int offset, int count, float vx, float vy) {
+        long start = System.nanoTime();
+        int first = dropStore.size();
+        dropStore.ensureCapacity(first + count);
+        if(particles) {
+            for(int i = 0; i < count; i++)
+                dropStore.add(xy[offset + i * 2], xy[offset + i * 2 + 1]);
+        } else {
+            int pooled = Math.min(free.size, count);
+            for(int i = 0; i < pooled; i++) {
+                int index = dropStore.add(reuse());
+                dropStore.setPosition(index, xy[offset + i * 2], xy[offset + i * 2 + 1]);
+            }
+
+            int missing = count - pooled;
+            if(missing > 0) {
+                if(bodies.length < missing)
+                    bodies = new Body[missing];
+                bodyDrop.createBodies(world, xy, offset + pooled * 2, missing, bodies);
+                for(int i = 0; i < missing; i++) {
+                    dropStore.add(bodies[i]);
+                    bodies[i] = null;
+                }
+                created += missing;
+            }
+        }
+        for(int i = first; i < first + count; i++)
+            dropStore.setLinearVelocity(i, vx, vy);
+
+        spawned += count;
+        spawnTime += System.nanoTime() - start;
+        return first;
+    }
+
+    private Body reuse() {
+        Body body = free.pop();
+        body.setActive(true);
+        body.setUserData(bodyDrop);
+        body.setAngularVelocity(0);
+        body.setAwake(true);
+        return body;
+    }
+
+    /**
+     * Removes drop i from the store and keeps its body for the next spawn.
+     * Like {@link DropStore#remove(int)} the last drop moves into slot i.
+     */
+    public void free(int i) {
+        Body body = dropStore.getBody(i);
+        if(body == null) {
+            dropStore.remove(i);
+            return;
+        }
+
+        float mass = dropStore.getMass(i);
+        if(mass > 1) {
+            // Merged particles go back to the size of a standard drop
+            Fixture fixture = body.getFixtureList().get(0);
+            fixture.getShape().setRadius(fixture.getShape().getRadius() / (float)Math.sqrt(mass));
+            body.resetMassData();
+        }
+        body.setActive(false);
+        // The actor of the drop is detached, the body must not lead back to it
+        body.setUserData(null);
+        dropStore.remove(i);
+        free.add(body);
+    }
+
+    /**
+     * Culls drops out of the kill region and sleeping drops out of the view, called after the physics step.
+     */
+    public void cull() {
+        final float[] xs = dropStore.getXs();
+        final float[] ys = dropStore.getYs();
+        // From the end, the drop moved into a freed slot has been checked already
+        for(int i = dropStore.size() - 1; i >= 0; i--) {
+            float x = xs[i];
+            float y = ys[i];
+            boolean killed = x < killMinX || x > killMaxX || y < killMinY || y > killMaxY;
+            boolean hidden = x < viewMinX || x > viewMaxX || y < viewMinY || y > viewMaxY;
+            if(killed || hidden && !dropStore.isAwake(i)) {
+                free(i);
+                culled++;
+            }
+        }
+    }
+
+    public int getFreeCount() {
+        return free.size;
+    }
+
+    public int getSpawnedCount() {
+        return spawned;
+    }
+
+    /**
+     * Bodies created because the pool was empty, the rest of the spawns reused a body.
+     */
+    public int getCreatedCount() {
+        return created;
+    }
+
+    public int getCulledCount() {
+        return culled;
+    }
+
+    /**
+     * Average time of one spawn in microseconds.
+     */
+    public float getAverageSpawnTime() {
+        return spawned == 0 ? 0 : spawnTime / 1000f / spawned;
+    }
+
+    public DropStore getDropStore() {
+        return dropStore;
+    }
+}
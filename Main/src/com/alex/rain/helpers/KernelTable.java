@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * Copyright 2013 See AUTHORS file.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE V3
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.gnu.org/licenses/gpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.alex.rain.helpers;
+
+/**
+ * Liquid kernel terms sampled over the squared distance of a pair, so the kernel needs neither a square root
+ * nor a division. The squared range [0, radius^2) is split into size bins of equal width and every bin holds
+ * the terms at its middle. Bins are narrow in distance far from a drop and wide close to it, where Box2D
+ * keeps drops from getting anyway.
+ */
+public class KernelTable {
+    private final int size;
+    private final float radius;
+    private final float scale;
+    /** 1 - distance / radius */
+    final float[] q;
+    /** 1 / (2 * distance) */
+    final float[] halfInvLength;
+
+    public KernelTable(float radius, int size) {
+        this.size = size;
+        this.radius = radius;
+        scale = size / (radius * radius);
+        q = new float[size];
+        halfInvLength = new float[size];
+        for(int k = 0; k < size; k++) {
+            float length = (float)Math.sqrt((k + 0.5f) / scale);
+            q[k] = 1.0f - length / radius;
+            halfInvLength[k] = 1.0f / (2.0f * length);
+        }
+    }
+
+    /**
+     * @param lengthSq squared distance of a pair, smaller than radius^2
+     */
+    int bin(float lengthSq) {
+        // Rounding can give size just below radius^2
+        return Math.min((int)(lengthSq * scale), size - 1);
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Largest difference of q from the exact kernel for pairs at least minLength apart.
+     */
+    public float getMaxError(float minLength) {
+        float error = 0;
+        int first = bin(minLength * minLength);
+        for(int k = first; k < size; k++) {
+            // q is monotonic, the bin edges are the worst case
+            float lower = (float)Math.sqrt(Math.max(k / scale, minLength * minLength));
+            float upper = (float)Math.sqrt((k + 1) / scale);
+            error = Math.max(error, Math.abs(q[k] - (1.0f - lower / radius)));
+            error = Math.max(error, Math.abs(q[k] - (1.0f - upper / radius)));
+        }
+        return error;
+    }
+}
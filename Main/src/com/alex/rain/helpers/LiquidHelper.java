@@ -13,37 +13,49 @@
  ******************************************************************************/
 package com.alex.rain.helpers;
 
-import com.alex.rain.models.Drop;
-import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
+import com.alex.rain.models.DropStore;
+import com.badlogic.gdx.utils.FloatArray;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * Based on www.jbox2d.org liquid demo
  */
 
-public class LiquidHelper {
-    private final List<Drop> dropList;
+public class LiquidHelper implements LiquidSolver {
+    private final DropStore dropStore;
+    private final DropStore.Listener dropListener;
     private int dropListSize;
-    private final float fluidMinX = 0f;
-    private final  float fluidMaxX = 800f;
-    private final float fluidMinY = 0f;
-    private final float fluidMaxY = 480f;
-    private final int hashWidthCount = 30, hashHeightCount = 20;
-    private final float hashWidthCountE = hashWidthCount - 0.001f, hashHeightCountE = hashHeightCount - 0.001f;
-    private final float hashColWidth = hashWidthCountE / fluidMaxX, hashColHeight = hashHeightCountE / fluidMaxY;
-    private final int [][][] hash;
-    private final int [][] hashSize;
-    private final int MAX_NUMBER = 500;
+    private final CellList cellList = new CellList();
+    private final NeighborList neighborList;
     private final float VISCOSITY = 0.004f;
     private final float RADIUS;
     private final float IDEAL_RADIUS;
     private final float IDEAL_RADIUS_SQ;
     private final float MULTIPLIER;
     private final float EPSILON = 0.001f;
-    private final int[] neighbors = new int[MAX_NUMBER];
-    private final float[] vlen = new float[MAX_NUMBER];
-    private final ShapeRenderer shapeRenderer = new ShapeRenderer();
+    private boolean symmetric;
+    private float[] pairVlen = new float[0];
+    private KernelTable kernelTable;
+    private int[] pairBin = new int[0];
+    private float[] p;
+    private float[] pnear;
+    private final float SLEEP_VELOCITY = 15f;
+    private final int SLEEP_STEPS = 30;
+    private boolean sleepingEnabled;
+    private int[] slowSteps;
+    private boolean[] asleep;
+    private boolean[] cellAwake = new boolean[0];
+    private float[] sleepP;
+    private float[] sleepPnear;
+    private final FloatArray wakeRegions = new FloatArray();
+    private int asleepCount;
+    private final int STRIPE_WIDTH = 2;
+    private final int PASS_FULL = 0, PASS_DENSITY = 1, PASS_PAIRS = 2;
+    private int threads;
+    private List<StripeWorker> workers;
+    private ExecutorService executor;
 
     private float[] xchange;
     private float[] ychange;
@@ -51,162 +63,663 @@ public class LiquidHelper {
     private float[] ys;
     private float[] vxs;
     private float[] vys;
+    private float[] masses;
 
-    float cellWidth, cellHeight;
-    public LiquidHelper(ArrayList<Drop> dropList, boolean lightVersion) {
-        this.dropList = dropList;
-        dropListSize = dropList.size();
+    public LiquidHelper(DropStore dropStore, boolean lightVersion) {
+        this.dropStore = dropStore;
+        dropListSize = dropStore.size();
         RADIUS = lightVersion ? 40f : 30f;
         IDEAL_RADIUS = lightVersion ? 400f : 300f;
         MULTIPLIER = IDEAL_RADIUS / RADIUS;
         IDEAL_RADIUS_SQ = IDEAL_RADIUS * IDEAL_RADIUS;
-
-        cellWidth = fluidMaxX / hashWidthCount;
-        cellHeight = fluidMaxY / hashHeightCount;
-        hash = new int[hashWidthCount][hashHeightCount][MAX_NUMBER];
-        hashSize = new int[hashWidthCount][hashHeightCount];
+        neighborList = new NeighborList(RADIUS / 4);
 
         createRequiredData();
+        setThreads(0);
+        dropListener = new DropStore.Listener() {
+            @Override
+            public void onDropMoved(int from, int to) {
+                moveDrop(from, to);
+            }
+        };
+        dropStore.addListener(dropListener);
     }
 
-    private int hashX(float x) {
-        return (int)(x * hashColWidth);
-    }
+    private void moveDrop(int from, int to) {
+        neighborList.invalidate();
+        if(to >= asleep.length)
+            return;
 
-    private int hashY(float y) {
-        return (int)(y * hashColHeight);
+        // Drops added after the last step have no state yet
+        if(from < asleep.length) {
+            slowSteps[to] = slowSteps[from];
+            asleep[to] = asleep[from];
+            sleepP[to] = sleepP[from];
+            sleepPnear[to] = sleepPnear[from];
+        } else {
+            from = to;
+        }
+        slowSteps[from] = 0;
+        asleep[from] = false;
+        sleepP[from] = 0;
+        sleepPnear[from] = 0;
     }
 
     private void hashLocations() {
-        for (int a = 0; a < hashWidthCount; a++) {
-            for (int b = 0; b < hashHeightCount; b++) {
-                hashSize[a][b] = 0;
+        // Cells are not smaller than the list radius, so the 3x3 cells around a drop hold all its neighbors
+        cellList.build(dropStore.getXs(), dropStore.getYs(), dropListSize, RADIUS + neighborList.getSkin());
+    }
+
+    private void updateNeighbors() {
+        if(neighborList.update(dropStore.getXs(), dropStore.getYs(), dropListSize)) {
+            hashLocations();
+            neighborList.build(cellList, dropStore.getXs(), dropStore.getYs(), dropListSize, RADIUS);
+        }
+    }
+
+    /**
+     * Neighbor lists are kept for radius + skin and rebuilt only when some drop has moved more than half the skin.
+     */
+    public void setNeighborSkin(float skin) {
+        neighborList.setSkin(skin);
+    }
+
+    @Override
+    public NeighborList getNeighborList() {
+        return neighborList;
+    }
+
+    /**
+     * Drops closer than this interact, in world units.
+     */
+    public float getRadius() {
+        return RADIUS;
+    }
+
+    /**
+     * In symmetric mode every pair of drops is visited once per pass and the impulse is applied to both,
+     * the result is the same as visiting the pair from both sides.
+     */
+    public void setSymmetric(boolean symmetric) {
+        this.symmetric = symmetric;
+        neighborList.setHalf(symmetric);
+    }
+
+    public boolean isSymmetric() {
+        return symmetric;
+    }
+
+    /**
+     * Looks the kernel terms up in a {@link KernelTable} of size bins instead of computing them, 0 computes
+     * them exactly. More bins are more accurate, fewer stay in the cache. Only used in symmetric mode,
+     * LiquidKernelBenchmark reports error and speed of a size.
+     */
+    public void setKernelTableSize(int size) {
+        kernelTable = size > 0 ? new KernelTable(IDEAL_RADIUS, size) : null;
+    }
+
+    public int getKernelTableSize() {
+        return kernelTable == null ? 0 : kernelTable.getSize();
+    }
+
+    public KernelTable getKernelTable() {
+        return kernelTable;
+    }
+
+    /**
+     * Drops of the kernel are MULTIPLIER times further apart than in the world.
+     */
+    public float getMultiplier() {
+        return MULTIPLIER;
+    }
+
+    /**
+     * Cells whose drops stayed slower than SLEEP_VELOCITY for SLEEP_STEPS steps fall asleep. Their drops
+     * skip own pressure computation and are put to sleep in Box2D, awake drops still feel their pressure.
+     * A cell wakes when a moving drop, a Box2D contact or a {@link #wakeRegion woken region} touches it.
+     */
+    public void setSleepingEnabled(boolean sleepingEnabled) {
+        this.sleepingEnabled = sleepingEnabled;
+        if(!sleepingEnabled) {
+            for(int i = 0; i < dropListSize; i++)
+                if(asleep[i])
+                    dropStore.setAwake(i, true);
+            Arrays.fill(asleep, false);
+            Arrays.fill(slowSteps, 0);
+            asleepCount = 0;
+        }
+    }
+
+    /**
+     * Wakes all cells touching the rectangle on the next step, used for moving rigid bodies.
+     */
+    @Override
+    public void wakeRegion(float minX, float minY, float maxX, float maxY) {
+        wakeRegions.add(minX);
+        wakeRegions.add(minY);
+        wakeRegions.add(maxX);
+        wakeRegions.add(maxY);
+    }
+
+    @Override
+    public int getAsleepCount() {
+        return asleepCount;
+    }
+
+    @Override
+    public int getAwakeCount() {
+        return dropListSize - asleepCount;
+    }
+
+    /**
+     * Drop i slept during the last step, false for drops added since then.
+     */
+    @Override
+    public boolean isAsleep(int i) {
+        return i < dropListSize && asleep[i];
+    }
+
+    /**
+     * Cells of the last neighbor list build.
+     */
+    @Override
+    public CellList getCellList() {
+        return cellList;
+    }
+
+    /**
+     * Tells if cell c of {@link #getCellList()} was awake during the last step.
+     */
+    @Override
+    public boolean isCellAwake(int c) {
+        return !sleepingEnabled || cellAwake[c];
+    }
+
+    private int currentCell(int i) {
+        return cellList.column(dropStore.getX(i)) * cellList.getRows() + cellList.row(dropStore.getY(i));
+    }
+
+    private void updateSleeping() {
+        final int rows = cellList.getRows();
+        final int cells = cellList.getColumns() * rows;
+        if(cellAwake.length < cells)
+            cellAwake = new boolean[cells];
+        Arrays.fill(cellAwake, 0, cells, false);
+
+        final float[] dropVxs = dropStore.getVelocitiesX();
+        final float[] dropVys = dropStore.getVelocitiesY();
+        final float limitSq = SLEEP_VELOCITY * SLEEP_VELOCITY;
+        for(int i = 0; i < dropListSize; i++) {
+            // Box2D wakes a sleeping body when something hits it
+            if(asleep[i] && dropStore.isAwake(i)) {
+                slowSteps[i] = 0;
+            } else if(dropVxs[i] * dropVxs[i] + dropVys[i] * dropVys[i] < limitSq) {
+                if(slowSteps[i] < SLEEP_STEPS)
+                    slowSteps[i]++;
+            } else {
+                slowSteps[i] = 0;
+            }
+            if(slowSteps[i] < SLEEP_STEPS) {
+                cellAwake[cellList.getParticleCell(i)] = true;
+                cellAwake[currentCell(i)] = true;
             }
         }
 
-        for (int a = 0; a < dropListSize; a++) {
-            int hcell = hashX(dropList.get(a).getPosition().x);
-            int vcell = hashY(dropList.get(a).getPosition().y);
-            if (hcell > -1 && hcell < hashWidthCount && vcell > -1 && vcell < hashHeightCount)
-                hash[hcell][vcell][hashSize[hcell][vcell]++] = a;
+        final float cellSize = cellList.getCellSize();
+        final float gridMaxX = cellList.getMinX() + cellList.getColumns() * cellSize;
+        final float gridMaxY = cellList.getMinY() + rows * cellSize;
+        for(int r = 0; r < wakeRegions.size; r += 4) {
+            float minX = wakeRegions.get(r), minY = wakeRegions.get(r + 1);
+            float maxX = wakeRegions.get(r + 2), maxY = wakeRegions.get(r + 3);
+            if(maxX < cellList.getMinX() || maxY < cellList.getMinY() || minX > gridMaxX || minY > gridMaxY)
+                continue;
+            for(int xc = cellList.column(minX); xc <= cellList.column(maxX); xc++)
+                for(int yc = cellList.row(minY); yc <= cellList.row(maxY); yc++)
+                    cellAwake[xc * rows + yc] = true;
+        }
+        wakeRegions.clear();
+
+        asleepCount = 0;
+        for(int i = 0; i < dropListSize; i++) {
+            boolean wasAsleep = asleep[i];
+            asleep[i] = !cellAwake[cellList.getParticleCell(i)] && !cellAwake[currentCell(i)];
+            if(asleep[i]) {
+                asleepCount++;
+                if(!wasAsleep)
+                    dropStore.setAwake(i, false);
+            } else if(wasAsleep) {
+                slowSteps[i] = 0;
+            }
         }
     }
 
     public void createRequiredData() {
-        xchange = new float[dropListSize];
-        ychange = new float[dropListSize];
-        xs = new float[dropListSize];
-        ys = new float[dropListSize];
-        vxs = new float[dropListSize];
-        vys = new float[dropListSize];
+        ensureCapacity(dropListSize);
+    }
+
+    @Override
+    public void ensureCapacity(int drops) {
+        if(xchange != null && xchange.length >= drops)
+            return;
+
+        int capacity = xchange == null ? drops : Math.max(drops, xchange.length * 2);
+        xchange = new float[capacity];
+        ychange = new float[capacity];
+        xs = new float[capacity];
+        ys = new float[capacity];
+        vxs = new float[capacity];
+        vys = new float[capacity];
+        p = new float[capacity];
+        pnear = new float[capacity];
+        // Sleeping state lives longer than a step, keep it for the existing drops
+        slowSteps = slowSteps == null ? new int[capacity] : Arrays.copyOf(slowSteps, capacity);
+        asleep = asleep == null ? new boolean[capacity] : Arrays.copyOf(asleep, capacity);
+        sleepP = sleepP == null ? new float[capacity] : Arrays.copyOf(sleepP, capacity);
+        sleepPnear = sleepPnear == null ? new float[capacity] : Arrays.copyOf(sleepPnear, capacity);
+        if(workers != null)
+            for(StripeWorker worker : workers)
+                worker.createRequiredData();
+    }
+
+    /**
+     * Sets the number of worker threads for the liquid constraint.
+     * 0 runs it on the calling thread. Stripes are run in the same order, so the results are the same
+     * for any thread count.
+     */
+    public void setThreads(int threads) {
+        if(workers != null && threads == this.threads)
+            return;
+
+        stopWorkers();
+        this.threads = threads;
+        workers = new ArrayList<StripeWorker>(Math.max(threads, 1));
+        for(int w = 0; w < Math.max(threads, 1); w++)
+            workers.add(new StripeWorker(w));
+        if(threads > 1)
+            executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "liquid-worker");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
     }
 
+    public int getThreads() {
+        return threads;
+    }
+
+    @Override
+    public void dispose() {
+        stopWorkers();
+        dropStore.removeListener(dropListener);
+    }
+
+    private void stopWorkers() {
+        if(executor != null)
+            executor.shutdown();
+        executor = null;
+        workers = null;
+        threads = 0;
+    }
+
+    @Override
     public void applyLiquidConstraint(final float deltaT) {
-        if(dropListSize != dropList.size()) {
-            dropListSize = dropList.size();
+        if(dropListSize != dropStore.size()) {
+            dropListSize = dropStore.size();
             createRequiredData();
         }
 
-        hashLocations();
+        updateNeighbors();
+        if(sleepingEnabled)
+            updateSleeping();
         Arrays.fill(xchange, 0.0f);
         Arrays.fill(ychange, 0.0f);
 
+        final float[] dropXs = dropStore.getXs();
+        final float[] dropYs = dropStore.getYs();
+        final float[] dropVxs = dropStore.getVelocitiesX();
+        final float[] dropVys = dropStore.getVelocitiesY();
+        masses = dropStore.getMasses();
         for (int i = 0; i < dropListSize; ++i) {
-            xs[i] = MULTIPLIER * dropList.get(i).getPosition().x;
-            ys[i] = MULTIPLIER * dropList.get(i).getPosition().y;
-            vxs[i] = MULTIPLIER * dropList.get(i).getLinearVelocity().x;
-            vys[i] = MULTIPLIER * dropList.get(i).getLinearVelocity().y;
+            xs[i] = MULTIPLIER * dropXs[i];
+            ys[i] = MULTIPLIER * dropYs[i];
+            vxs[i] = MULTIPLIER * dropVxs[i];
+            vys[i] = MULTIPLIER * dropVys[i];
+        }
+
+        if(symmetric) {
+            int pairs = neighborList.getStart()[dropListSize];
+            if(pairVlen.length < pairs)
+                pairVlen = new float[neighborList.getNeighbors().length];
+            if(kernelTable != null && pairBin.length < pairs)
+                pairBin = new int[neighborList.getNeighbors().length];
+            // Sleeping drops keep the density they had when they fell asleep
+            for (int i = 0; i < dropListSize; i++) {
+                p[i] = asleep[i] ? sleepP[i] : 0.0f;
+                pnear[i] = asleep[i] ? sleepPnear[i] : 0.0f;
+            }
         }
 
+        applyStriped(deltaT);
+
         for (int i = 0; i < dropListSize; i++) {
-            // Populate the neighbor list from the 9 proximate cells
-            int neighborsSize = 0;
-            int hcell = hashX(dropList.get(i).getPosition().x);
-            int vcell = hashY(dropList.get(i).getPosition().y);
-            for (int nx = -1; nx < 2; nx++) {
-                int xc = hcell + nx;
-                for (int ny = -1; ny < 2; ny++) {
-                    int yc = vcell + ny;
-                    if (xc > -1 && xc < hashWidthCount && yc > -1 && yc < hashHeightCount && hashSize[xc][yc] > 0) {
-                        for (int a = 0; a < hashSize[xc][yc]; a++) {
-                            int ne = hash[xc][yc][a];
-                            if (ne != i)
-                                neighbors[neighborsSize++] = ne;
-                        }
-                    }
+            // Let Box2D keep sleeping bodies asleep
+            if (asleep[i])
+                continue;
+            // todo: is it correct?
+            //dropStore.setPosition(i, dropXs[i] + xchange[i] / MULTIPLIER, dropYs[i] + ychange[i] / MULTIPLIER);
+            dropStore.setLinearVelocity(i, dropVxs[i] + xchange[i] / (MULTIPLIER * deltaT),
+                    dropVys[i] + ychange[i] / (MULTIPLIER * deltaT));
+        }
+
+    }
+
+    /**
+     * Cell columns of the last neighbor list build are grouped into stripes of STRIPE_WIDTH columns.
+     * A particle only writes to particles of its own and both adjacent columns, so all even stripes
+     * can run at once, then all odd ones. Every particle gets its changes in the same order
+     * whatever the thread count is, also without threads.
+     */
+    private void applyStriped(float deltaT) {
+        if(symmetric) {
+            runPhase(PASS_DENSITY, 0, deltaT);
+            runPhase(PASS_DENSITY, 1, deltaT);
+            saveDensity();
+            runPhase(PASS_PAIRS, 0, deltaT);
+            runPhase(PASS_PAIRS, 1, deltaT);
+        } else {
+            runPhase(PASS_FULL, 0, deltaT);
+            runPhase(PASS_FULL, 1, deltaT);
+        }
+    }
+
+    private void runPhase(int pass, int phase, float deltaT) {
+        for (StripeWorker worker : workers)
+            worker.prepare(pass, phase, deltaT);
+
+        if (executor == null) {
+            workers.get(0).call();
+            return;
+        }
+
+        try {
+            for (Future<Void> future : executor.invokeAll(workers))
+                future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private void applyParticle(int i, float deltaT, float[] vlen) {
+        if (asleep[i]) {
+            pushAwakeNeighbors(i, deltaT);
+            return;
+        }
+
+        final int[] neighbors = neighborList.getNeighbors();
+        final int first = neighborList.getStart()[i];
+        final int neighborsSize = neighborList.getStart()[i + 1] - first;
+
+        // Particle pressure calculated by particle proximity
+        // Pressures = 0 iff all particles within range are IDEAL_RADIUS distance away
+        float p = 0.0f;
+        float pnear = 0.0f;
+        for (int a = 0; a < neighborsSize; a++) {
+            int j = neighbors[first + a];
+            float vx = xs[j] - xs[i];
+            float vy = ys[j] - ys[i];
+
+            // early exit check
+            if (vx > -IDEAL_RADIUS && vx < IDEAL_RADIUS && vy > -IDEAL_RADIUS && vy < IDEAL_RADIUS) {
+                float vlensqr = (vx * vx + vy * vy);
+                // within IDEAL_RADIUS check
+                if (vlensqr < IDEAL_RADIUS_SQ) {
+                    vlen[a] = (float) Math.sqrt(vlensqr);
+                    if (vlen[a] < EPSILON)
+                        vlen[a] = IDEAL_RADIUS - .01f;
+                    float oneminusq = 1.0f - (vlen[a] / IDEAL_RADIUS);
+                    float oneminusqSq = oneminusq * oneminusq;
+                    // Merged drops of a pool weigh as much as the drops they replace
+                    p += masses[j] * oneminusqSq;
+                    pnear += masses[j] * oneminusq * oneminusqSq;
+                } else {
+                    vlen[a] = Float.MAX_VALUE;
                 }
             }
+        }
 
-            // Particle pressure calculated by particle proximity
-            // Pressures = 0 iff all particles within range are IDEAL_RADIUS distance away
-            float p = 0.0f;
-            float pnear = 0.0f;
-            for (int a = 0; a < neighborsSize; a++) {
-                int j = neighbors[a];
-                float vx = xs[j] - xs[i];
-                float vy = ys[j] - ys[i];
-
-                // early exit check
-                if (vx > -IDEAL_RADIUS && vx < IDEAL_RADIUS && vy > -IDEAL_RADIUS && vy < IDEAL_RADIUS) {
-                    float vlensqr = (vx * vx + vy * vy);
-                    // within IDEAL_RADIUS check
-                    if (vlensqr < IDEAL_RADIUS_SQ) {
-                        vlen[a] = (float) Math.sqrt(vlensqr);
-                        if (vlen[a] < EPSILON)
-                            vlen[a] = IDEAL_RADIUS - .01f;
-                        float oneminusq = 1.0f - (vlen[a] / IDEAL_RADIUS);
-                        float oneminusqSq = oneminusq * oneminusq;
-                        p += oneminusqSq;
-                        pnear += oneminusq * oneminusqSq;
-                    } else {
-                        vlen[a] = Float.MAX_VALUE;
-                    }
+        sleepP[i] = p;
+        sleepPnear[i] = pnear;
+        float pressure = (p - 4F) / 2.0F; // normal pressure term
+        float presnear = pnear / 2.0F; // near particles term
+        for (int a = 0; a < neighborsSize; a++) {
+            if (vlen[a] == Float.MAX_VALUE)
+                continue;
+
+            int j = neighbors[first + a];
+            float vx = xs[j] - xs[i];
+            float vy = ys[j] - ys[i];
+            if (vx > -IDEAL_RADIUS && vx < IDEAL_RADIUS && vy > -IDEAL_RADIUS && vy < IDEAL_RADIUS) {
+                float oneminusq = 1.0f - (vlen[a] / IDEAL_RADIUS);
+                float factor = oneminusq * (pressure + presnear * oneminusq) / (2.0F * vlen[a]);
+                float dx = vx * factor;
+                float dy = vy * factor;
+                float relvx = vxs[j] - vxs[i];
+                float relvy = vys[j] - vys[i];
+                factor = VISCOSITY * oneminusq * deltaT;
+                dx -= relvx * factor;
+                dy -= relvy * factor;
+
+                // Sleeping drops only push awake ones, they are frozen until woken
+                if (!asleep[j]) {
+                    xchange[j] += dx * masses[i];
+                    ychange[j] += dy * masses[i];
                 }
+                xchange[i] -= dx * masses[j];
+                ychange[i] -= dy * masses[j];
             }
+        }
+    }
 
-            float pressure = (p - 4F) / 2.0F; // normal pressure term
-            float presnear = pnear / 2.0F; // near particles term
-            for (int a = 0; a < neighborsSize; a++) {
-                if (vlen[a] == Float.MAX_VALUE)
-                    continue;
+    /**
+     * The part of {@link #applyParticle} a sleeping drop still does, its pressure pushes the awake neighbors.
+     * It keeps the density it had when it fell asleep.
+     */
+    private void pushAwakeNeighbors(int i, float deltaT) {
+        final int[] neighbors = neighborList.getNeighbors();
+        final int first = neighborList.getStart()[i];
+        final int last = neighborList.getStart()[i + 1];
+        final float pressure = (sleepP[i] - 4F) / 2.0F;
+        final float presnear = sleepPnear[i] / 2.0F;
 
-                int j = neighbors[a];
-                float vx = xs[j] - xs[i];
-                float vy = ys[j] - ys[i];
-                if (vx > -IDEAL_RADIUS && vx < IDEAL_RADIUS && vy > -IDEAL_RADIUS && vy < IDEAL_RADIUS) {
-                    float oneminusq = 1.0f - (vlen[a] / IDEAL_RADIUS);
-                    float factor = oneminusq * (pressure + presnear * oneminusq) / (2.0F * vlen[a]);
-                    float dx = vx * factor;
-                    float dy = vy * factor;
-                    float relvx = vxs[j] - vxs[i];
-                    float relvy = vys[j] - vys[i];
-                    factor = VISCOSITY * oneminusq * deltaT;
-                    dx -= relvx * factor;
-                    dy -= relvy * factor;
-
-                    xchange[j] += dx;
-                    ychange[j] += dy;
-                    xchange[i] -= dx;
-                    ychange[i] -= dy;
+        for (int a = first; a < last; a++) {
+            int j = neighbors[a];
+            if (asleep[j])
+                continue;
+
+            float vx = xs[j] - xs[i];
+            float vy = ys[j] - ys[i];
+            float vlensqr = vx * vx + vy * vy;
+            if (vlensqr >= IDEAL_RADIUS_SQ)
+                continue;
+            float len = (float) Math.sqrt(vlensqr);
+            if (len < EPSILON)
+                len = IDEAL_RADIUS - .01f;
+            float oneminusq = 1.0f - (len / IDEAL_RADIUS);
+            float factor = oneminusq * (pressure + presnear * oneminusq) / (2.0F * len);
+            float dx = vx * factor;
+            float dy = vy * factor;
+            float relvx = vxs[j] - vxs[i];
+            float relvy = vys[j] - vys[i];
+            factor = VISCOSITY * oneminusq * deltaT;
+            dx -= relvx * factor;
+            dy -= relvy * factor;
+            xchange[j] += dx * masses[i];
+            ychange[j] += dy * masses[i];
+        }
+    }
+
+    /**
+     * First pass of the symmetric mode, density terms of each pair are added to both drops.
+     */
+    private void accumulateDensity(int i) {
+        final int[] neighbors = neighborList.getNeighbors();
+        final int first = neighborList.getStart()[i];
+        final int last = neighborList.getStart()[i + 1];
+        final KernelTable table = kernelTable;
+
+        for (int a = first; a < last; a++) {
+            int j = neighbors[a];
+            if (table != null)
+                pairBin[a] = -1;
+            else
+                pairVlen[a] = Float.MAX_VALUE;
+            if (asleep[i] && asleep[j])
+                continue;
+            float vx = xs[j] - xs[i];
+            float vy = ys[j] - ys[i];
+
+            // early exit check
+            if (vx > -IDEAL_RADIUS && vx < IDEAL_RADIUS && vy > -IDEAL_RADIUS && vy < IDEAL_RADIUS) {
+                float vlensqr = (vx * vx + vy * vy);
+                // within IDEAL_RADIUS check
+                if (vlensqr < IDEAL_RADIUS_SQ) {
+                    float oneminusq;
+                    if (table != null) {
+                        int k = table.bin(vlensqr);
+                        pairBin[a] = k;
+                        oneminusq = table.q[k];
+                    } else {
+                        float len = (float) Math.sqrt(vlensqr);
+                        if (len < EPSILON)
+                            len = IDEAL_RADIUS - .01f;
+                        pairVlen[a] = len;
+                        oneminusq = 1.0f - (len / IDEAL_RADIUS);
+                    }
+                    float oneminusqSq = oneminusq * oneminusq;
+                    if (!asleep[i]) {
+                        p[i] += masses[j] * oneminusqSq;
+                        pnear[i] += masses[j] * oneminusq * oneminusqSq;
+                    }
+                    if (!asleep[j]) {
+                        p[j] += masses[i] * oneminusqSq;
+                        pnear[j] += masses[i] * oneminusq * oneminusqSq;
+                    }
                 }
             }
         }
+    }
 
+    private void saveDensity() {
         for (int i = 0; i < dropListSize; i++) {
-            // todo: is it correct?
-            //dropList.get(i).setPosition(dropList.get(i).getPosition().add(xchange[i] / MULTIPLIER, ychange[i] / MULTIPLIER));
-            dropList.get(i).setLinearVelocity(dropList.get(i).getLinearVelocity().add(xchange[i] / (MULTIPLIER * deltaT), ychange[i] / (MULTIPLIER * deltaT)));
+            if (!asleep[i]) {
+                sleepP[i] = p[i];
+                sleepPnear[i] = pnear[i];
+            }
         }
+    }
+
+    /**
+     * Second pass of the symmetric mode, pressure of both drops and viscosity are applied once per pair.
+     */
+    private void applyPairs(int i, float deltaT) {
+        final int[] neighbors = neighborList.getNeighbors();
+        final int first = neighborList.getStart()[i];
+        final int last = neighborList.getStart()[i + 1];
+        final float pressureI = (p[i] - 4F) / 2.0F;
+        final float presnearI = pnear[i] / 2.0F;
+        final float viscosity = 2 * VISCOSITY * deltaT;
+        final KernelTable table = kernelTable;
 
+        for (int a = first; a < last; a++) {
+            if (table != null ? pairBin[a] < 0 : pairVlen[a] == Float.MAX_VALUE)
+                continue;
+
+            int j = neighbors[a];
+            float vx = xs[j] - xs[i];
+            float vy = ys[j] - ys[i];
+            float pressure = pressureI + (p[j] - 4F) / 2.0F;
+            float presnear = presnearI + pnear[j] / 2.0F;
+            float oneminusq, factor;
+            if (table != null) {
+                int k = pairBin[a];
+                oneminusq = table.q[k];
+                factor = oneminusq * (pressure + presnear * oneminusq) * table.halfInvLength[k];
+            } else {
+                float len = pairVlen[a];
+                oneminusq = 1.0f - (len / IDEAL_RADIUS);
+                factor = oneminusq * (pressure + presnear * oneminusq) / (2.0F * len);
+            }
+            float dx = vx * factor;
+            float dy = vy * factor;
+            float relvx = vxs[j] - vxs[i];
+            float relvy = vys[j] - vys[i];
+            factor = viscosity * oneminusq;
+            dx -= relvx * factor;
+            dy -= relvy * factor;
+
+            // Sleeping drops only push awake ones, they are frozen until woken
+            if (!asleep[j]) {
+                xchange[j] += dx * masses[i];
+                ychange[j] += dy * masses[i];
+            }
+            if (!asleep[i]) {
+                xchange[i] -= dx * masses[j];
+                ychange[i] -= dy * masses[j];
+            }
+        }
     }
 
-    public void drawDebug() {
-        shapeRenderer.begin(ShapeRenderer.ShapeType.Line);
-        shapeRenderer.setColor(1, 1, 0, 1);
-        for(int i = 0; i < hashWidthCount; i++)
-            shapeRenderer.line(i * 800 / hashWidthCount, 0, i * 800 / hashWidthCount, 480);
-        for(int j = 0; j < hashHeightCount; j++)
-            shapeRenderer.line(0, j * 480 / hashHeightCount, 800, j * 480 / hashHeightCount);
-        shapeRenderer.end();
+    private class StripeWorker implements Callable<Void> {
+        private final int index;
+        private float[] vlen;
+        private int pass;
+        private int phase;
+        private float deltaT;
+
+        StripeWorker(int index) {
+            this.index = index;
+            createRequiredData();
+        }
+
+        void createRequiredData() {
+            vlen = new float[xchange.length];
+        }
+
+        void prepare(int pass, int phase, float deltaT) {
+            this.pass = pass;
+            this.phase = phase;
+            this.deltaT = deltaT;
+        }
+
+        @Override
+        public Void call() {
+            // Without an executor the only worker runs every stripe of the phase
+            int step = executor == null ? 1 : threads;
+            final int columns = cellList.getColumns();
+            final int rows = cellList.getRows();
+            final int[] cellStart = cellList.getCellStart();
+            final int[] sortedIndices = cellList.getSortedIndices();
+            int stripeCount = (columns + STRIPE_WIDTH - 1) / STRIPE_WIDTH;
+            for (int stripe = phase + 2 * index; stripe < stripeCount; stripe += 2 * step) {
+                int lastColumn = Math.min((stripe + 1) * STRIPE_WIDTH, columns);
+                // Whole columns are contiguous in the sorted indices
+                int from = cellStart[stripe * STRIPE_WIDTH * rows];
+                int to = cellStart[lastColumn * rows];
+                for (int a = from; a < to; a++) {
+                    if (pass == PASS_DENSITY)
+                        accumulateDensity(sortedIndices[a]);
+                    else if (pass == PASS_PAIRS)
+                        applyPairs(sortedIndices[a], deltaT);
+                    else
+                        applyParticle(sortedIndices[a], deltaT, vlen);
+                }
+            }
+            return null;
+        }
     }
 }
@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * Copyright 2013 See AUTHORS file.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE V3
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.gnu.org/licenses/gpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.alex.rain.helpers;
+
+/**
+ * Liquid behaviour of the drops of a {@link com.alex.rain.models.DropStore}. Solvers change the drop velocities
+ * before each physics step, Box2D then moves the drops and resolves collisions with the level.
+ */
+public interface LiquidSolver {
+    /**
+     * Changes the velocities of the drops for the next physics step of deltaT seconds.
+     */
+    void applyLiquidConstraint(float deltaT);
+
+    /**
+     * Wakes the drops touching the rectangle on the next step, solvers without sleeping ignore it.
+     */
+    void wakeRegion(float minX, float minY, float maxX, float maxY);
+
+    /**
+     * Drop i slept during the last step.
+     */
+    boolean isAsleep(int i);
+
+    /**
+     * Tells if cell c of {@link #getCellList()} was awake during the last step.
+     */
+    boolean isCellAwake(int c);
+
+    /**
+     * Cells of the last neighbor search.
+     */
+    CellList getCellList();
+
+    /**
+     * Grows the per-drop buffers for the given number of drops now instead of on the next step.
+     */
+    void ensureCapacity(int drops);
+
+    NeighborList getNeighborList();
+
+    int getAwakeCount();
+
+    int getAsleepCount();
+
+    /**
+     * Stops worker threads and detaches the solver from its drops.
+     */
+    void dispose();
+}
@@ -0,0 +1,176 @@
+/*******************************************************************************
+ * Copyright 2013 See AUTHORS file.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE V3
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.gnu.org/licenses/gpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.alex.rain.helpers;
+
+/**
+ * Verlet neighbor lists. Every particle keeps all particles closer than radius + skin,
+ * the lists stay valid until some particle has moved more than half of the skin.
+ */
+public class NeighborList {
+    /** Steps after which the rebuild statistics are halved, so the rate follows what the drops do now. */
+    private static final int RATE_WINDOW = 600;
+    private float skin;
+    private boolean half;
+    private int size;
+    private int[] start = new int[1];
+    private int[] neighbors = new int[0];
+    private float[] builtXs = new float[0];
+    private float[] builtYs = new float[0];
+    private int maxLength;
+    private boolean valid;
+    private long steps;
+    private long builds;
+
+    public NeighborList(float skin) {
+        this.skin = skin;
+    }
+
+    public void setSkin(float skin) {
+        this.skin = skin;
+        valid = false;
+        resetStatistics();
+    }
+
+    public float getSkin() {
+        return skin;
+    }
+
+    /**
+     * Half lists keep every pair once, in the list of its lower index.
+     */
+    public void setHalf(boolean half) {
+        this.half = half;
+        valid = false;
+        resetStatistics();
+    }
+
+    public boolean isHalf() {
+        return half;
+    }
+
+    /**
+     * Forces a rebuild on the next step, needed when particles were removed or reordered.
+     */
+    public void invalidate() {
+        valid = false;
+    }
+
+    /**
+     * Counts a step and tells if the lists have to be rebuilt for these positions.
+     */
+    public boolean update(float[] xs, float[] ys, int n) {
+        if(steps == RATE_WINDOW) {
+            steps /= 2;
+            builds /= 2;
+        }
+        steps++;
+        if(!valid || n != size)
+            return true;
+
+        float limitSq = skin * skin / 4;
+        for(int i = 0; i < n; i++) {
+            float dx = xs[i] - builtXs[i];
+            float dy = ys[i] - builtYs[i];
+            if(dx * dx + dy * dy > limitSq)
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * @param cellList cells built for these positions with cell size of at least radius + skin
+     */
+    public void build(CellList cellList, float[] xs, float[] ys, int n, float radius) {
+        if(builtXs.length < n) {
+            builtXs = new float[n];
+            builtYs = new float[n];
+        }
+        if(start.length < n + 1)
+            start = new int[n + 1];
+
+        final float cutoffSq = (radius + skin) * (radius + skin);
+        final int columns = cellList.getColumns();
+        final int rows = cellList.getRows();
+        final int[] cellStart = cellList.getCellStart();
+        final int[] sortedIndices = cellList.getSortedIndices();
+        int count = 0;
+        maxLength = 0;
+        for(int i = 0; i < n; i++) {
+            start[i] = count;
+            int cell = cellList.getParticleCell(i);
+            int hcell = cell / rows;
+            int vcell = cell % rows;
+            int firstRow = Math.max(vcell - 1, 0);
+            int lastRow = Math.min(vcell + 1, rows - 1);
+            for(int xc = Math.max(hcell - 1, 0); xc <= Math.min(hcell + 1, columns - 1); xc++) {
+                // Rows of one column are contiguous in the sorted indices
+                for(int a = cellStart[xc * rows + firstRow], end = cellStart[xc * rows + lastRow + 1]; a < end; a++) {
+                    int j = sortedIndices[a];
+                    if(j == i || (half && j < i))
+                        continue;
+                    float dx = xs[j] - xs[i];
+                    float dy = ys[j] - ys[i];
+                    if(dx * dx + dy * dy < cutoffSq) {
+                        if(count == neighbors.length) {
+                            int[] tmp = new int[Math.max(16, count * 2)];
+                            System.arraycopy(neighbors, 0, tmp, 0, count);
+                            neighbors = tmp;
+                        }
+                        neighbors[count++] = j;
+                    }
+                }
+            }
+            maxLength = Math.max(maxLength, count - start[i]);
+            builtXs[i] = xs[i];
+            builtYs[i] = ys[i];
+        }
+        start[n] = count;
+        size = n;
+        valid = true;
+        builds++;
+    }
+
+    /**
+     * Neighbors of particle i are neighbors[start[i]] .. neighbors[start[i + 1] - 1].
+     */
+    public int[] getStart() {
+        return start;
+    }
+
+    public int[] getNeighbors() {
+        return neighbors;
+    }
+
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    public float getAverageLength() {
+        return size == 0 ? 0 : (float)start[size] / size;
+    }
+
+    /**
+     * Part of the steps which needed a rebuild, mostly of the last RATE_WINDOW steps. Starts again when
+     * the skin or the list kind changes and after {@link #resetStatistics()}.
+     */
+    public float getRebuildRate() {
+        return steps == 0 ? 0 : (float)builds / steps;
+    }
+
+    public void resetStatistics() {
+        steps = 0;
+        builds = 0;
+    }
+}
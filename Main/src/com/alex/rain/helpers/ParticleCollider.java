@@ -0,0 +1,465 @@
+/*******************************************************************************
+ * Copyright 2013 See AUTHORS file.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE V3
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.gnu.org/licenses/gpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.alex.rain.helpers;
+
+import com.alex.rain.models.DropStore;
+import com.alex.rain.models.Ground;
+import com.alex.rain.models.SimpleActor;
+import com.alex.rain.simulation.GameSimulation;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.*;
+import com.badlogic.gdx.utils.Array;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Moves the particles of a {@link DropStore}, drops without a Box2D body. The liquid solver keeps particles
+ * apart, this class adds gravity and collides them with the ground through a signed distance field sampled
+ * on a grid. Dynamic bodies are tested shape by shape and get the impulses of the particles hitting them,
+ * only the particles in the cells of a {@link CellList} covering the bounding box of a shape are tested.
+ * All lengths are in world units.
+ * <p>
+ * The cell list of the liquid solver is built at its last neighbor list rebuild, before merging and before
+ * the particles are moved here, so the collider sorts the moved drops into its own.
+ */
+public class ParticleCollider {
+    private final DropStore dropStore;
+    private final float radius;
+    private final float particleMass;
+    private final float CELL_SIZE = 4;
+    private final float MARGIN = 32;
+    private final float FRICTION = 0.1f;
+    private final float WAKE_SPEED = 15;
+    /** Smallest cell of the drops, the cell list makes them bigger for sparse drops. */
+    private final float DROP_CELL_SIZE = 8;
+    private final CellList cellList = new CellList();
+    private final List<float[]> outlines = new ArrayList<float[]>();
+    private boolean fieldDirty;
+    private float[] field = new float[0];
+    private int columns, rows;
+    private float minX, minY;
+    private float gravityX, gravityY;
+    private float gradientX, gradientY;
+    private float normalX, normalY;
+    private float[] shapeVertices = new float[16];
+    private final Vector2 vertex = new Vector2();
+    private int particleCount;
+    private int contactCount;
+
+    /**
+     * @param radius radius of a particle
+     * @param gravityX gravity of the world in world units
+     */
+    public ParticleCollider(DropStore dropStore, float radius, float gravityX, float gravityY) {
+        this.dropStore = dropStore;
+        this.radius = radius;
+        this.gravityX = gravityX;
+        this.gravityY = gravityY;
+        // A standard drop has a circle fixture of density 1
+        float boxRadius = radius * GameSimulation.WORLD_TO_BOX;
+        particleMass = (float)Math.PI * boxRadius * boxRadius;
+    }
+
+    public void addGround(Ground ground) {
+        List<Vector2> vertices = ground.getVertices();
+        float[] outline = new float[vertices.size() * 2];
+        for(int k = 0; k < vertices.size(); k++) {
+            outline[2 * k] = vertices.get(k).x;
+            outline[2 * k + 1] = vertices.get(k).y;
+        }
+        addOutline(outline);
+    }
+
+    /**
+     * Adds a solid polygon, the field is rebuilt on the next update.
+     * @param outline x and y of every vertex, in either order
+     */
+    public void addOutline(float[] outline) {
+        outlines.add(outline);
+        fieldDirty = true;
+    }
+
+    public void setGravity(float gravityX, float gravityY) {
+        this.gravityX = gravityX;
+        this.gravityY = gravityY;
+    }
+
+    private void buildField() {
+        fieldDirty = false;
+        if(outlines.isEmpty()) {
+            columns = rows = 0;
+            return;
+        }
+
+        float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+        minX = minY = Float.MAX_VALUE;
+        for(float[] outline : outlines) {
+            for(int k = 0; k < outline.length; k += 2) {
+                minX = Math.min(minX, outline[k]);
+                maxX = Math.max(maxX, outline[k]);
+                minY = Math.min(minY, outline[k + 1]);
+                maxY = Math.max(maxY, outline[k + 1]);
+            }
+        }
+        minX -= MARGIN;
+        minY -= MARGIN;
+        columns = (int)Math.ceil((maxX + MARGIN - minX) / CELL_SIZE) + 1;
+        rows = (int)Math.ceil((maxY + MARGIN - minY) / CELL_SIZE) + 1;
+        if(field.length < columns * rows)
+            field = new float[columns * rows];
+
+        for(int c = 0; c < columns; c++) {
+            for(int r = 0; r < rows; r++) {
+                float distance = Float.MAX_VALUE;
+                for(float[] outline : outlines)
+                    distance = Math.min(distance, outlineDistance(outline, minX + c * CELL_SIZE, minY + r * CELL_SIZE));
+                field[c * rows + r] = distance;
+            }
+        }
+    }
+
+    /**
+     * Distance of the point from the edges of the outline, negative inside.
+     */
+    private static float outlineDistance(float[] outline, float px, float py) {
+        int n = outline.length / 2;
+        float distanceSq = Float.MAX_VALUE;
+        boolean inside = false;
+        for(int k = 0, l = n - 1; k < n; l = k++) {
+            float ax = outline[2 * l], ay = outline[2 * l + 1];
+            float bx = outline[2 * k], by = outline[2 * k + 1];
+            float ex = bx - ax, ey = by - ay;
+            float lengthSq = ex * ex + ey * ey;
+            float t = lengthSq > 0 ? ((px - ax) * ex + (py - ay) * ey) / lengthSq : 0;
+            t = Math.max(0, Math.min(1, t));
+            float dx = px - ax - t * ex, dy = py - ay - t * ey;
+            distanceSq = Math.min(distanceSq, dx * dx + dy * dy);
+            // Even-odd rule
+            if((ay > py) != (by > py) && px < ax + (py - ay) / (by - ay) * ex)
+                inside = !inside;
+        }
+        float distance = (float)Math.sqrt(distanceSq);
+        return inside ? -distance : distance;
+    }
+
+    /**
+     * Bilinear sample of the ground distance field and its gradient, Float.MAX_VALUE outside of the grid.
+     */
+    public float distance(float x, float y) {
+        if(fieldDirty)
+            buildField();
+
+        float gx = (x - minX) / CELL_SIZE;
+        float gy = (y - minY) / CELL_SIZE;
+        if(gx < 0 || gy < 0 || gx >= columns - 1 || gy >= rows - 1)
+            return Float.MAX_VALUE;
+
+        int c = (int)gx, r = (int)gy;
+        float fx = gx - c, fy = gy - r;
+        float d00 = field[c * rows + r], d01 = field[c * rows + r + 1];
+        float d10 = field[(c + 1) * rows + r], d11 = field[(c + 1) * rows + r + 1];
+        gradientX = ((d10 - d00) * (1 - fy) + (d11 - d01) * fy) / CELL_SIZE;
+        gradientY = ((d01 - d00) * (1 - fx) + (d11 - d10) * fx) / CELL_SIZE;
+        return (d00 * (1 - fx) + d10 * fx) * (1 - fy) + (d01 * (1 - fx) + d11 * fx) * fy;
+    }
+
+    /**
+     * Moves the awake particles by one step and resolves their collisions with the ground and the dynamic
+     * bodies of actors. Called before the Box2D step, which then moves the bodies with the impulses.
+     */
+    public void update(float deltaT, List<SimpleActor> actors) {
+        if(fieldDirty)
+            buildField();
+
+        final float[] xs = dropStore.getXs();
+        final float[] ys = dropStore.getYs();
+        final float[] vxs = dropStore.getVelocitiesX();
+        final float[] vys = dropStore.getVelocitiesY();
+        particleCount = 0;
+        for(int i = 0, n = dropStore.size(); i < n; i++) {
+            if(!dropStore.isParticle(i))
+                continue;
+            particleCount++;
+            if(!dropStore.isAwake(i))
+                continue;
+
+            vxs[i] += gravityX * deltaT;
+            vys[i] += gravityY * deltaT;
+            move(i, xs, ys, vxs[i] * deltaT, vys[i] * deltaT);
+            collideGround(i, xs, ys, vxs, vys);
+        }
+
+        contactCount = 0;
+        if(particleCount == 0)
+            return;
+        boolean sorted = false;
+        for(SimpleActor actor : actors) {
+            Body body = actor.getBody();
+            if(body == null || body.getType() != BodyDef.BodyType.DynamicBody)
+                continue;
+            if(!sorted) {
+                cellList.build(xs, ys, dropStore.size(), DROP_CELL_SIZE);
+                sorted = true;
+            }
+            collideBody(body);
+        }
+    }
+
+    /**
+     * Particles moving further than their radius are moved in steps of at most the radius and stop
+     * at the first step touching the ground, so they can not pass through thin ground.
+     */
+    private void move(int i, float[] xs, float[] ys, float dx, float dy) {
+        float travel = Math.abs(dx) + Math.abs(dy);
+        if(travel <= radius) {
+            xs[i] += dx;
+            ys[i] += dy;
+            return;
+        }
+
+        int steps = (int)Math.ceil(travel / radius);
+        float x = xs[i], y = ys[i];
+        for(int k = 1; k <= steps; k++) {
+            xs[i] = x + dx * k / steps;
+            ys[i] = y + dy * k / steps;
+            if(distance(xs[i], ys[i]) < radius)
+                return;
+        }
+    }
+
+    private void collideGround(int i, float[] xs, float[] ys, float[] vxs, float[] vys) {
+        float distance = distance(xs[i], ys[i]);
+        if(distance >= radius)
+            return;
+
+        float length = (float)Math.sqrt(gradientX * gradientX + gradientY * gradientY);
+        if(length < 0.0001f)
+            return;
+        float nx = gradientX / length, ny = gradientY / length;
+        xs[i] += nx * (radius - distance);
+        ys[i] += ny * (radius - distance);
+        resolveVelocity(i, vxs, vys, nx, ny, 0, 0);
+    }
+
+    /**
+     * Removes the velocity of particle i into the surface, relative to the surface velocity,
+     * and slows it down along the surface.
+     * @return relative normal velocity before the contact, negative when the particle moved into the surface
+     */
+    private float resolveVelocity(int i, float[] vxs, float[] vys, float nx, float ny, float surfaceVx, float surfaceVy) {
+        float rvx = vxs[i] - surfaceVx, rvy = vys[i] - surfaceVy;
+        float vn = rvx * nx + rvy * ny;
+        if(vn >= 0)
+            return vn;
+
+        rvx -= vn * nx;
+        rvy -= vn * ny;
+        // Coulomb friction, the tangential velocity loses at most FRICTION times the normal velocity
+        float tangential = (float)Math.sqrt(rvx * rvx + rvy * rvy);
+        float scale = tangential > 0 ? Math.max(0, 1 + FRICTION * vn / tangential) : 0;
+        vxs[i] = surfaceVx + rvx * scale;
+        vys[i] = surfaceVy + rvy * scale;
+        return vn;
+    }
+
+    private void collideBody(Body body) {
+        final float[] xs = dropStore.getXs();
+        final float[] ys = dropStore.getYs();
+        final float[] vxs = dropStore.getVelocitiesX();
+        final float[] vys = dropStore.getVelocitiesY();
+        final float[] masses = dropStore.getMasses();
+        final int[] cellStart = cellList.getCellStart();
+        final int[] sortedIndices = cellList.getSortedIndices();
+        final int rows = cellList.getRows();
+        final float toWorld = GameSimulation.BOX_TO_WORLD;
+
+        Vector2 position = body.getPosition();
+        float bodyX = position.x * toWorld, bodyY = position.y * toWorld;
+        float cos = (float)Math.cos(body.getAngle()), sin = (float)Math.sin(body.getAngle());
+        Vector2 center = body.getWorldCenter();
+        float centerX = center.x * toWorld, centerY = center.y * toWorld;
+        Vector2 velocity = body.getLinearVelocity();
+        float bodyVx = velocity.x * toWorld, bodyVy = velocity.y * toWorld;
+        float angularVelocity = body.getAngularVelocity();
+        float invBodyMass = body.getMass() > 0 ? 1 / body.getMass() : 0;
+
+        float impulseX = 0, impulseY = 0, angularImpulse = 0;
+        boolean wake = false;
+        Array<Fixture> fixtures = body.getFixtureList();
+        for(int f = 0; f < fixtures.size; f++) {
+            Fixture fixture = fixtures.get(f);
+            if(fixture.isSensor() || (fixture.getFilterData().maskBits & SimpleActor.CATEGORY_DROP) == 0)
+                continue;
+
+            // Shape in world coordinates, circles are one vertex and their radius
+            Shape shape = fixture.getShape();
+            int n;
+            float shapeRadius;
+            if(shape instanceof PolygonShape) {
+                PolygonShape polygon = (PolygonShape)shape;
+                n = polygon.getVertexCount();
+                if(shapeVertices.length < 2 * n)
+                    shapeVertices = new float[2 * n];
+                for(int k = 0; k < n; k++) {
+                    polygon.getVertex(k, vertex);
+                    shapeVertices[2 * k] = bodyX + (cos * vertex.x - sin * vertex.y) * toWorld;
+                    shapeVertices[2 * k + 1] = bodyY + (sin * vertex.x + cos * vertex.y) * toWorld;
+                }
+                shapeRadius = 0;
+            } else if(shape instanceof CircleShape) {
+                Vector2 local = ((CircleShape)shape).getPosition();
+                n = 1;
+                shapeVertices[0] = bodyX + (cos * local.x - sin * local.y) * toWorld;
+                shapeVertices[1] = bodyY + (sin * local.x + cos * local.y) * toWorld;
+                shapeRadius = shape.getRadius() * toWorld;
+            } else {
+                continue;
+            }
+
+            float boxMinX = Float.MAX_VALUE, boxMinY = Float.MAX_VALUE;
+            float boxMaxX = -Float.MAX_VALUE, boxMaxY = -Float.MAX_VALUE;
+            for(int k = 0; k < n; k++) {
+                boxMinX = Math.min(boxMinX, shapeVertices[2 * k]);
+                boxMaxX = Math.max(boxMaxX, shapeVertices[2 * k]);
+                boxMinY = Math.min(boxMinY, shapeVertices[2 * k + 1]);
+                boxMaxY = Math.max(boxMaxY, shapeVertices[2 * k + 1]);
+            }
+            float reach = shapeRadius + radius;
+            boxMinX -= reach;
+            boxMinY -= reach;
+            boxMaxX += reach;
+            boxMaxY += reach;
+
+            // Particles pushed out of an earlier shape are not sorted again, the margin catches most of them
+            int firstColumn = cellList.column(boxMinX - radius), lastColumn = cellList.column(boxMaxX + radius);
+            int firstRow = cellList.row(boxMinY - radius), lastRow = cellList.row(boxMaxY + radius);
+            for(int c = firstColumn; c <= lastColumn; c++) {
+                // Rows of a column are contiguous in the sorted indices
+                int from = cellStart[c * rows + firstRow], to = cellStart[c * rows + lastRow + 1];
+                for(int a = from; a < to; a++) {
+                    int i = sortedIndices[a];
+                    float x = xs[i], y = ys[i];
+                    if(x < boxMinX || x > boxMaxX || y < boxMinY || y > boxMaxY || !dropStore.isParticle(i))
+                        continue;
+
+                    float distance = n == 1 ? circleDistance(x, y, shapeRadius) : polygonDistance(n, x, y);
+                    if(distance >= radius)
+                        continue;
+
+                    xs[i] += normalX * (radius - distance);
+                    ys[i] += normalY * (radius - distance);
+                    float rx = xs[i] - centerX, ry = ys[i] - centerY;
+                    float surfaceVx = bodyVx - angularVelocity * ry;
+                    float surfaceVy = bodyVy + angularVelocity * rx;
+                    float vxBefore = vxs[i], vyBefore = vys[i];
+                    float vn = resolveVelocity(i, vxs, vys, normalX, normalY, surfaceVx, surfaceVy);
+                    contactCount++;
+                    if(vn >= 0)
+                        continue;
+
+                    // Only the share of the impulse the particle can give against the mass of the body
+                    float mass = masses[i] * particleMass;
+                    float share = invBodyMass > 0 ? 1 / (1 + mass * invBodyMass) : 1;
+                    if(share < 1) {
+                        vxs[i] = vxBefore + (vxs[i] - vxBefore) * share;
+                        vys[i] = vyBefore + (vys[i] - vyBefore) * share;
+                    }
+                    float jx = -mass * (vxs[i] - vxBefore), jy = -mass * (vys[i] - vyBefore);
+                    impulseX += jx;
+                    impulseY += jy;
+                    angularImpulse += rx * jy - ry * jx;
+                    if(vn < -WAKE_SPEED) {
+                        wake = true;
+                        dropStore.setAwake(i, true);
+                    }
+                }
+            }
+        }
+
+        if(impulseX != 0 || impulseY != 0) {
+            // Impulses of resting particles only count while the body is awake, like resting contacts
+            final float toBox = GameSimulation.WORLD_TO_BOX;
+            body.applyLinearImpulse(impulseX * toBox, impulseY * toBox, center.x, center.y, wake);
+            body.applyAngularImpulse(angularImpulse * toBox * toBox, wake);
+        }
+    }
+
+    /**
+     * Distance of the point from the shape in shapeVertices, negative inside. Sets the outward normal.
+     */
+    private float polygonDistance(int n, float px, float py) {
+        float maxDot = -Float.MAX_VALUE;
+        float distanceSq = Float.MAX_VALUE;
+        float closestX = 0, closestY = 0;
+        float edgeNx = 0, edgeNy = 0;
+        for(int k = 0; k < n; k++) {
+            int l = (k + 1) % n;
+            float ax = shapeVertices[2 * k], ay = shapeVertices[2 * k + 1];
+            float ex = shapeVertices[2 * l] - ax, ey = shapeVertices[2 * l + 1] - ay;
+            float length = (float)Math.sqrt(ex * ex + ey * ey);
+            if(length == 0)
+                continue;
+            // Box2D polygons are counter-clockwise, the outward normal is on the right of the edge
+            float nx = ey / length, ny = -ex / length;
+            float dot = (px - ax) * nx + (py - ay) * ny;
+            if(dot > maxDot) {
+                maxDot = dot;
+                edgeNx = nx;
+                edgeNy = ny;
+            }
+            float t = Math.max(0, Math.min(1, ((px - ax) * ex + (py - ay) * ey) / (length * length)));
+            float dx = px - ax - t * ex, dy = py - ay - t * ey;
+            if(dx * dx + dy * dy < distanceSq) {
+                distanceSq = dx * dx + dy * dy;
+                closestX = dx;
+                closestY = dy;
+            }
+        }
+
+        if(maxDot <= 0 || distanceSq == 0) {
+            normalX = edgeNx;
+            normalY = edgeNy;
+            return maxDot;
+        }
+        float distance = (float)Math.sqrt(distanceSq);
+        normalX = closestX / distance;
+        normalY = closestY / distance;
+        return distance;
+    }
+
+    private float circleDistance(float px, float py, float shapeRadius) {
+        float dx = px - shapeVertices[0], dy = py - shapeVertices[1];
+        float length = (float)Math.sqrt(dx * dx + dy * dy);
+        if(length == 0) {
+            normalX = 0;
+            normalY = 1;
+        } else {
+            normalX = dx / length;
+            normalY = dy / length;
+        }
+        return length - shapeRadius;
+    }
+
+    public int getParticleCount() {
+        return particleCount;
+    }
+
+    /**
+     * Particles touching a dynamic body during the last update.
+     */
+    public int getContactCount() {
+        return contactCount;
+    }
+}
@@ -0,0 +1,300 @@
+/*******************************************************************************
+ * Copyright 2013 See AUTHORS file.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE V3
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.gnu.org/licenses/gpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.alex.rain.helpers;
+
+import com.alex.rain.models.DropStore;
+
+/**
+ * Position Based Fluids (Macklin and Mueller 2013). Drops are moved to their predicted positions, a few Jacobi
+ * iterations push them apart until no drop is denser than at rest, and the velocity which reaches the corrected
+ * position is handed to Box2D. The density constraint only pushes, so there is no clustering at the surface.
+ * Unlike the impulse kernel of {@link LiquidHelper} the correction does not grow with the time step.
+ * All lengths are in world units.
+ */
+public class PositionBasedFluidsSolver implements LiquidSolver {
+    private final DropStore dropStore;
+    private final DropStore.Listener dropListener;
+    private final CellList cellList = new CellList();
+    private final NeighborList neighborList;
+    private final float RADIUS;
+    private final float REST_SPACING;
+    private final float RELAXATION = 0.05f;
+    private final float VISCOSITY = 0.05f;
+    private final float EPSILON = 0.001f;
+    private final float MAX_CORRECTION;
+    private final float restDensity;
+    private final float epsilon;
+    private float gravityX, gravityY;
+    private int iterations = 3;
+    private int size;
+    private float[] pxs = new float[0];
+    private float[] pys = new float[0];
+    private float[] lambdas = new float[0];
+    private float[] dxs = new float[0];
+    private float[] dys = new float[0];
+    private float[] vxs = new float[0];
+    private float[] vys = new float[0];
+
+    /**
+     * @param gravityX gravity of the world in world units, Box2D applies it again in its step
+     */
+    public PositionBasedFluidsSolver(DropStore dropStore, boolean lightVersion, float gravityX, float gravityY) {
+        this.dropStore = dropStore;
+        this.gravityX = gravityX;
+        this.gravityY = gravityY;
+        REST_SPACING = lightVersion ? 12f : 9f;
+        RADIUS = REST_SPACING * 2.2f;
+        MAX_CORRECTION = REST_SPACING / 8;
+        neighborList = new NeighborList(RADIUS / 4);
+
+        // Density and constraint gradient of a drop inside a hexagonal lattice at rest spacing
+        float density = 1;
+        float gradientSq = 0;
+        float gradientX = 0, gradientY = 0;
+        int rings = (int)Math.ceil(RADIUS / REST_SPACING) + 1;
+        for(int row = -rings; row <= rings; row++) {
+            for(int column = -rings; column <= rings; column++) {
+                float x = (column + (row & 1) * 0.5f) * REST_SPACING;
+                float y = row * REST_SPACING * (float)Math.sqrt(3) / 2;
+                float r = (float)Math.sqrt(x * x + y * y);
+                if(r < EPSILON || r >= RADIUS)
+                    continue;
+                density += kernel(r);
+                float g = kernelDerivative(r);
+                gradientX += g * x / r;
+                gradientY += g * y / r;
+                gradientSq += g * g;
+            }
+        }
+        restDensity = density;
+        epsilon = RELAXATION * (gradientSq + gradientX * gradientX + gradientY * gradientY) / (density * density);
+
+        dropListener = new DropStore.Listener() {
+            @Override
+            public void onDropMoved(int from, int to) {
+                neighborList.invalidate();
+            }
+        };
+        dropStore.addListener(dropListener);
+    }
+
+    /**
+     * Spiky kernel without its normalization, the constraint only uses densities relative to rest density.
+     */
+    private float kernel(float r) {
+        float q = 1 - r / RADIUS;
+        return q * q * q;
+    }
+
+    private float kernelDerivative(float r) {
+        float q = 1 - r / RADIUS;
+        return -3 * q * q / RADIUS;
+    }
+
+    /**
+     * Jacobi iterations per step. Three are enough at 60 steps per second, more keep the water less compressed.
+     */
+    public void setIterations(int iterations) {
+        this.iterations = iterations;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    public void setGravity(float gravityX, float gravityY) {
+        this.gravityX = gravityX;
+        this.gravityY = gravityY;
+    }
+
+    @Override
+    public void ensureCapacity(int drops) {
+        if(pxs.length >= drops)
+            return;
+
+        int capacity = Math.max(drops, pxs.length * 2);
+        pxs = new float[capacity];
+        pys = new float[capacity];
+        lambdas = new float[capacity];
+        dxs = new float[capacity];
+        dys = new float[capacity];
+        vxs = new float[capacity];
+        vys = new float[capacity];
+    }
+
+    @Override
+    public void applyLiquidConstraint(float deltaT) {
+        size = dropStore.size();
+        ensureCapacity(size);
+
+        final float[] xs = dropStore.getXs();
+        final float[] ys = dropStore.getYs();
+        final float[] dropVxs = dropStore.getVelocitiesX();
+        final float[] dropVys = dropStore.getVelocitiesY();
+        for(int i = 0; i < size; i++) {
+            pxs[i] = xs[i] + (dropVxs[i] + gravityX * deltaT) * deltaT;
+            pys[i] = ys[i] + (dropVys[i] + gravityY * deltaT) * deltaT;
+        }
+
+        // The lists are built with a skin around the predicted positions and stay valid through the iterations
+        if(neighborList.update(pxs, pys, size)) {
+            cellList.build(pxs, pys, size, RADIUS + neighborList.getSkin());
+            neighborList.build(cellList, pxs, pys, size, RADIUS);
+        }
+
+        for(int k = 0; k < iterations; k++) {
+            computeLambdas();
+            computeCorrections();
+            for(int i = 0; i < size; i++) {
+                pxs[i] += dxs[i];
+                pys[i] += dys[i];
+            }
+        }
+
+        for(int i = 0; i < size; i++) {
+            vxs[i] = (pxs[i] - xs[i]) / deltaT;
+            vys[i] = (pys[i] - ys[i]) / deltaT;
+        }
+        applyViscosity();
+
+        // Box2D adds gravity before moving the bodies, they end up at the corrected positions
+        for(int i = 0; i < size; i++)
+            dropStore.setLinearVelocity(i, vxs[i] - gravityX * deltaT, vys[i] - gravityY * deltaT);
+    }
+
+    private void computeLambdas() {
+        final int[] start = neighborList.getStart();
+        final int[] neighbors = neighborList.getNeighbors();
+        final float[] masses = dropStore.getMasses();
+        for(int i = 0; i < size; i++) {
+            float density = masses[i];
+            float gradientX = 0, gradientY = 0;
+            float gradientSq = 0;
+            for(int a = start[i]; a < start[i + 1]; a++) {
+                int j = neighbors[a];
+                float dx = pxs[i] - pxs[j];
+                float dy = pys[i] - pys[j];
+                float r = (float)Math.sqrt(dx * dx + dy * dy);
+                if(r >= RADIUS || r < EPSILON)
+                    continue;
+                density += masses[j] * kernel(r);
+                float g = masses[j] * kernelDerivative(r) / (r * restDensity);
+                gradientX += g * dx;
+                gradientY += g * dy;
+                gradientSq += g * g * r * r;
+            }
+            float constraint = Math.max(density / restDensity - 1, 0);
+            lambdas[i] = -constraint / (gradientSq + gradientX * gradientX + gradientY * gradientY + epsilon);
+        }
+    }
+
+    private void computeCorrections() {
+        final int[] start = neighborList.getStart();
+        final int[] neighbors = neighborList.getNeighbors();
+        final float[] masses = dropStore.getMasses();
+        for(int i = 0; i < size; i++) {
+            float dxSum = 0, dySum = 0;
+            for(int a = start[i]; a < start[i + 1]; a++) {
+                int j = neighbors[a];
+                float dx = pxs[i] - pxs[j];
+                float dy = pys[i] - pys[j];
+                float r = (float)Math.sqrt(dx * dx + dy * dy);
+                if(r >= RADIUS || r < EPSILON)
+                    continue;
+                float s = (lambdas[i] + lambdas[j]) * masses[j] * kernelDerivative(r) / (r * restDensity);
+                dxSum += s * dx;
+                dySum += s * dy;
+            }
+            // Heavier drops are moved less, drops spawned into each other are pushed apart over a few steps
+            dxSum /= masses[i];
+            dySum /= masses[i];
+            float lengthSq = dxSum * dxSum + dySum * dySum;
+            if(lengthSq > MAX_CORRECTION * MAX_CORRECTION) {
+                float scale = MAX_CORRECTION / (float)Math.sqrt(lengthSq);
+                dxSum *= scale;
+                dySum *= scale;
+            }
+            dxs[i] = dxSum;
+            dys[i] = dySum;
+        }
+    }
+
+    /**
+     * XSPH viscosity, every drop moves a little with the drops around it.
+     */
+    private void applyViscosity() {
+        final int[] start = neighborList.getStart();
+        final int[] neighbors = neighborList.getNeighbors();
+        final float[] masses = dropStore.getMasses();
+        for(int i = 0; i < size; i++) {
+            float dvx = 0, dvy = 0;
+            for(int a = start[i]; a < start[i + 1]; a++) {
+                int j = neighbors[a];
+                float dx = pxs[i] - pxs[j];
+                float dy = pys[i] - pys[j];
+                float r = (float)Math.sqrt(dx * dx + dy * dy);
+                if(r >= RADIUS)
+                    continue;
+                float w = masses[j] * kernel(r) / restDensity;
+                dvx += (vxs[j] - vxs[i]) * w;
+                dvy += (vys[j] - vys[i]) * w;
+            }
+            dxs[i] = dvx;
+            dys[i] = dvy;
+        }
+        for(int i = 0; i < size; i++) {
+            vxs[i] += VISCOSITY * dxs[i];
+            vys[i] += VISCOSITY * dys[i];
+        }
+    }
+
+    @Override
+    public void wakeRegion(float minX, float minY, float maxX, float maxY) {
+    }
+
+    @Override
+    public boolean isAsleep(int i) {
+        return false;
+    }
+
+    @Override
+    public boolean isCellAwake(int c) {
+        return true;
+    }
+
+    @Override
+    public CellList getCellList() {
+        return cellList;
+    }
+
+    @Override
+    public NeighborList getNeighborList() {
+        return neighborList;
+    }
+
+    @Override
+    public int getAwakeCount() {
+        return size;
+    }
+
+    @Override
+    public int getAsleepCount() {
+        return 0;
+    }
+
+    @Override
+    public void dispose() {
+        dropStore.removeListener(dropListener);
+    }
+}
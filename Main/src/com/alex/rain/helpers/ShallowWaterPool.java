@@ -0,0 +1,278 @@
+/*******************************************************************************
+ * Copyright 2013 See AUTHORS file.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE V3
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.gnu.org/licenses/gpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.alex.rain.helpers;
+
+import com.alex.rain.models.DropStore;
+import com.alex.rain.models.SimpleActor;
+import com.alex.rain.simulation.GameSimulation;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.*;
+import com.badlogic.gdx.utils.IntArray;
+
+/**
+ * Standing water over a flat ground segment, kept as a 1D shallow water heightfield instead of drops.
+ * Drops resting on the surface or sinking below it are absorbed, water is given back as drops when
+ * the pool overflows, the surface is agitated or a body stands in it. Every column has a box fixture
+ * up to its surface which only collides with drops. All lengths are in world units.
+ */
+public class ShallowWaterPool {
+    private final float COLUMN_WIDTH = 8;
+    private final float DAMPING = 0.98f;
+    private final int SPREAD = 2;
+    private final float ABSORB_DISTANCE = 2;
+    private final float ABSORB_SPEED = 30;
+    private final float AGITATION_SPEED = 60;
+    private final float FIXTURE_TOLERANCE = 1;
+
+    private final float minX, maxX;
+    private final float floorY;
+    private final float maxDepth;
+    private final float dropArea;
+    private final float dropRadius;
+    private final int columns;
+    private final float columnWidth;
+    private final float[] heights;
+    private final float[] velocities;
+    private final float[] fluxes;
+    private final float[] fixtureHeights;
+    private final Fixture[] fixtures;
+    private final boolean[] blocked;
+    private final Body body;
+    private final IntArray absorbed = new IntArray();
+
+    /**
+     * @param dropRadius radius of a standard drop, a drop stands for a square of three radii of water
+     */
+    public ShallowWaterPool(World world, float minX, float maxX, float floorY, float maxDepth, float dropRadius) {
+        this.minX = minX;
+        this.maxX = maxX;
+        this.floorY = floorY;
+        this.maxDepth = maxDepth;
+        this.dropRadius = dropRadius;
+        dropArea = 9 * dropRadius * dropRadius;
+        columns = Math.max(1, (int)((maxX - minX) / COLUMN_WIDTH));
+        columnWidth = (maxX - minX) / columns;
+        heights = new float[columns];
+        velocities = new float[columns + 1];
+        fluxes = new float[columns + 1];
+        fixtureHeights = new float[columns];
+        fixtures = new Fixture[columns];
+        blocked = new boolean[columns];
+
+        body = world.createBody(new BodyDef());
+    }
+
+    /**
+     * Columns under the rectangle give their water back as drops on the next step, used for rigid bodies.
+     */
+    public void block(float minX, float minY, float maxX, float maxY) {
+        if(maxX < this.minX || minX > this.maxX || minY > floorY + maxDepth || maxY < floorY)
+            return;
+
+        for(int c = column(minX); c <= column(maxX); c++)
+            blocked[c] = true;
+    }
+
+    public void update(float deltaT, DropRecycler dropRecycler, float gravity) {
+        absorb(dropRecycler);
+        simulate(deltaT, gravity);
+        emit(dropRecycler);
+        updateFixtures();
+        for(int c = 0; c < columns; c++)
+            blocked[c] = false;
+    }
+
+    private int column(float x) {
+        int c = (int)((x - minX) / columnWidth);
+        return c < 0 ? 0 : (c >= columns ? columns - 1 : c);
+    }
+
+    private void absorb(DropRecycler dropRecycler) {
+        final DropStore dropStore = dropRecycler.getDropStore();
+        final float[] xs = dropStore.getXs();
+        final float[] ys = dropStore.getYs();
+        final float[] vxs = dropStore.getVelocitiesX();
+        final float[] vys = dropStore.getVelocitiesY();
+        final float[] masses = dropStore.getMasses();
+        absorbed.clear();
+        for(int i = 0, n = dropStore.size(); i < n; i++) {
+            // Drops under the floor are on other ground, like a lower shelf or a cave below
+            if(xs[i] < minX || xs[i] >= maxX || ys[i] > floorY + maxDepth + dropRadius * 4 ||
+                    ys[i] < floorY - dropRadius)
+                continue;
+
+            int c = column(xs[i]);
+            if(blocked[c] || heights[c] >= maxDepth)
+                continue;
+            // Resting on the surface or already sunk below it
+            float top = floorY + fixtureHeights[c];
+            float bottom = ys[i] - dropRadius * (float)Math.sqrt(masses[i]);
+            boolean resting = bottom < top + ABSORB_DISTANCE &&
+                    vxs[i] * vxs[i] + vys[i] * vys[i] < ABSORB_SPEED * ABSORB_SPEED;
+            if(!resting && ys[i] >= floorY + heights[c])
+                continue;
+
+            addWater(c, masses[i] * dropArea, vxs[i]);
+            absorbed.add(i);
+        }
+
+        // Indices were collected in ascending order, removing backwards keeps the others valid
+        for(int r = absorbed.size - 1; r >= 0; r--)
+            dropRecycler.free(absorbed.get(r));
+    }
+
+    /**
+     * Spreads the water of a drop over a few columns with a tent profile, a whole drop in one column
+     * would start a wave on its own.
+     */
+    private void addWater(int column, float area, float vx) {
+        int first = Math.max(column - SPREAD, 0);
+        int last = Math.min(column + SPREAD, columns - 1);
+        float weights = 0;
+        for(int c = first; c <= last; c++)
+            weights += SPREAD + 1 - Math.abs(c - column);
+        for(int c = first; c <= last; c++) {
+            float depth = area * (SPREAD + 1 - Math.abs(c - column)) / (weights * columnWidth);
+            float momentum = vx * depth / (heights[c] + depth);
+            velocities[c] += momentum;
+            velocities[c + 1] += momentum;
+            heights[c] += depth;
+        }
+    }
+
+    /**
+     * Staggered grid, velocities live on the borders between columns and the pool ends are walls.
+     */
+    private void simulate(float deltaT, float gravity) {
+        for(int k = 1; k < columns; k++) {
+            velocities[k] += gravity * deltaT * (heights[k - 1] - heights[k]) / columnWidth;
+            velocities[k] *= DAMPING;
+        }
+        velocities[0] = 0;
+        velocities[columns] = 0;
+
+        fluxes[0] = fluxes[columns] = 0;
+        for(int k = 1; k < columns; k++)
+            fluxes[k] = velocities[k] * deltaT * (velocities[k] > 0 ? heights[k - 1] : heights[k]);
+
+        // No column may give away more water than it has
+        for(int c = 0; c < columns; c++) {
+            float outflow = Math.max(fluxes[c + 1], 0) - Math.min(fluxes[c], 0);
+            if(outflow > heights[c] * columnWidth) {
+                float scale = heights[c] * columnWidth / outflow;
+                if(fluxes[c + 1] > 0)
+                    fluxes[c + 1] *= scale;
+                if(fluxes[c] < 0)
+                    fluxes[c] *= scale;
+            }
+        }
+
+        for(int c = 0; c < columns; c++)
+            heights[c] = Math.max(heights[c] - (fluxes[c + 1] - fluxes[c]) / columnWidth, 0);
+    }
+
+    private void emit(DropRecycler dropRecycler) {
+        final float depth = dropArea / columnWidth;
+        for(int c = 0; c < columns; c++) {
+            if(heights[c] < depth)
+                continue;
+
+            float velocity = (velocities[c] + velocities[c + 1]) / 2;
+            if(!blocked[c] && heights[c] <= maxDepth && Math.abs(velocity) < AGITATION_SPEED)
+                continue;
+
+            heights[c] -= depth;
+            float y = floorY + Math.min(heights[c], maxDepth) + dropRadius;
+            dropRecycler.obtain(minX + (c + 0.5f) * columnWidth, y, velocity, Math.abs(velocity) / 2);
+        }
+    }
+
+    /**
+     * Column fixtures are only replaced when their surface moved noticeably.
+     */
+    private void updateFixtures() {
+        for(int c = 0; c < columns; c++) {
+            float height = blocked[c] ? 0 : Math.min(heights[c], maxDepth);
+            if(Math.abs(height - fixtureHeights[c]) < FIXTURE_TOLERANCE)
+                continue;
+
+            if(fixtures[c] != null)
+                body.destroyFixture(fixtures[c]);
+            fixtures[c] = null;
+            fixtureHeights[c] = height;
+            if(height < FIXTURE_TOLERANCE)
+                continue;
+
+            PolygonShape shape = new PolygonShape();
+            shape.setAsBox(columnWidth / 2 * GameSimulation.WORLD_TO_BOX, height / 2 * GameSimulation.WORLD_TO_BOX,
+                    new Vector2(minX + (c + 0.5f) * columnWidth, floorY + height / 2).scl(GameSimulation.WORLD_TO_BOX), 0);
+            FixtureDef fixtureDef = new FixtureDef();
+            fixtureDef.shape = shape;
+            fixtureDef.friction = 0.1f;
+            fixtureDef.filter.categoryBits = SimpleActor.CATEGORY_POOL;
+            fixtureDef.filter.maskBits = SimpleActor.CATEGORY_DROP;
+            fixtures[c] = body.createFixture(fixtureDef);
+            shape.dispose();
+        }
+    }
+
+    /**
+     * Gives all water back as drops stacked over the pool and removes the pool from the world. What a column
+     * has left under a whole drop is carried into the next one, the last remainder is rounded to a drop.
+     */
+    public void release(DropRecycler dropRecycler) {
+        final float depth = dropArea / columnWidth;
+        float carry = 0;
+        for(int c = 0; c < columns; c++) {
+            float x = minX + (c + 0.5f) * columnWidth;
+            carry += heights[c];
+            heights[c] = 0;
+            int count = c < columns - 1 ? (int)(carry / depth) : Math.round(carry / depth);
+            carry -= count * depth;
+            for(int k = 0; k < count; k++)
+                dropRecycler.obtain(x, floorY + dropRadius * (3 * k + 1), 0, 0);
+        }
+        body.getWorld().destroyBody(body);
+    }
+
+    /**
+     * Water of the pool in standard drops.
+     */
+    public float getVolume() {
+        float area = 0;
+        for(int c = 0; c < columns; c++)
+            area += heights[c] * columnWidth;
+        return area / dropArea;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public float getColumnX(int c) {
+        return minX + (c + 0.5f) * columnWidth;
+    }
+
+    public float getColumnWidth() {
+        return columnWidth;
+    }
+
+    public float getSurfaceY(int c) {
+        return floorY + heights[c];
+    }
+
+    public float getFloorY() {
+        return floorY;
+    }
+}
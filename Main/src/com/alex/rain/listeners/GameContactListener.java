@@ -13,39 +13,178 @@
  ******************************************************************************/
 package com.alex.rain.listeners;
 
+import com.alex.rain.managers.ScriptManager;
+import com.alex.rain.models.SimpleActor;
+import com.alex.rain.simulation.LuaBindings;
 import com.badlogic.gdx.physics.box2d.Contact;
 import com.badlogic.gdx.physics.box2d.ContactImpulse;
 import com.badlogic.gdx.physics.box2d.ContactListener;
+import com.badlogic.gdx.physics.box2d.Fixture;
 import com.badlogic.gdx.physics.box2d.Manifold;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.BooleanArray;
 import org.luaj.vm2.LuaFunction;
+import org.luaj.vm2.LuaTable;
 import org.luaj.vm2.LuaValue;
 import org.luaj.vm2.lib.jse.CoerceJavaToLua;
 
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Collects the contacts of a step whose actor types the level watches and hands them to the level script's
+ * onContacts(contacts) in one call after the step. Every entry of contacts has the fields a, b and began,
+ * a is of the first watched type. Contacts of unwatched pairs, like every drop splash, never reach Lua.
+ * Java listeners get the same contacts. Scripts with onBeginContact(contact) or onEndContact(contact) still get
+ * every contact right away. A callback which runs out of its budget in {@link ScriptManager} misses the contacts
+ * it was called with.
+ */
 public class GameContactListener implements ContactListener {
+    private static final SimpleActor.TYPE[] TYPES = SimpleActor.TYPE.values();
+    private static final LuaValue A = LuaValue.valueOf("a");
+    private static final LuaValue B = LuaValue.valueOf("b");
+    private static final LuaValue BEGAN = LuaValue.valueOf("began");
+
+    private static final byte UNWATCHED = 0, IN_ORDER = 1, SWAPPED = 2;
+
     LuaFunction luaOnBeginContactFunc;
     LuaFunction luaOnEndContactFunc;
+    LuaFunction luaOnContactsFunc;
+    private final byte[][] watched = new byte[TYPES.length][TYPES.length];
+    private final Array<SimpleActor> actorsA = new Array<SimpleActor>();
+    private final Array<SimpleActor> actorsB = new Array<SimpleActor>();
+    private final BooleanArray began = new BooleanArray();
+    private final Map<SimpleActor, LuaValue> luaActors = new IdentityHashMap<SimpleActor, LuaValue>();
+    private final Array<Listener> listeners = new Array<Listener>();
+
+    public interface Listener {
+        /**
+         * Called after the step for every contact of a watched pair, a is of the first watched type.
+         */
+        void onContact(SimpleActor a, SimpleActor b, boolean began);
+    }
 
-    public GameContactListener(LuaFunction luaOnBeginContactFunc, LuaFunction luaOnEndContactFunc) {
+    public GameContactListener(LuaFunction luaOnBeginContactFunc, LuaFunction luaOnEndContactFunc,
+                               LuaFunction luaOnContactsFunc) {
         this.luaOnBeginContactFunc = luaOnBeginContactFunc;
         this.luaOnEndContactFunc = luaOnEndContactFunc;
+        this.luaOnContactsFunc = luaOnContactsFunc;
+    }
+
+    /**
+     * Contacts between actors of type a and type b are passed to onContacts, in either order.
+     */
+    public void watch(SimpleActor.TYPE a, SimpleActor.TYPE b) {
+        if(watched[a.ordinal()][b.ordinal()] != UNWATCHED)
+            return;
+        watched[a.ordinal()][b.ordinal()] = IN_ORDER;
+        if(a != b)
+            watched[b.ordinal()][a.ordinal()] = SWAPPED;
+    }
+
+    /**
+     * Tells if contacts between a and b are passed on in this order.
+     */
+    public boolean isWatched(SimpleActor.TYPE a, SimpleActor.TYPE b) {
+        return watched[a.ordinal()][b.ordinal()] == IN_ORDER;
+    }
+
+    /**
+     * Also watches the pair of types of the two actors, in this order.
+     */
+    public void addListener(Listener listener, SimpleActor.TYPE a, SimpleActor.TYPE b) {
+        watch(a, b);
+        listeners.add(listener);
     }
 
     @Override
     public void endContact(Contact contact) {
+        collect(contact, false);
         if(luaOnEndContactFunc == null)
             return;
 
         LuaValue luaContact = CoerceJavaToLua.coerce(contact);
-        luaOnEndContactFunc.call(luaContact);
+        ScriptManager.getInstance().call(luaOnEndContactFunc, "onEndContact", luaContact);
     }
 
     @Override
     public void beginContact(Contact contact) {
+        collect(contact, true);
         if(luaOnBeginContactFunc == null)
             return;
 
         LuaValue luaContact = CoerceJavaToLua.coerce(contact);
-        luaOnBeginContactFunc.call(luaContact);
+        ScriptManager.getInstance().call(luaOnBeginContactFunc, "onBeginContact", luaContact);
+    }
+
+    private void collect(Contact contact, boolean begin) {
+        if(luaOnContactsFunc == null && listeners.size == 0)
+            return;
+
+        SimpleActor a = getActor(contact.getFixtureA());
+        SimpleActor b = getActor(contact.getFixtureB());
+        if(a == null || b == null)
+            return;
+        byte order = watched[a.getType().ordinal()][b.getType().ordinal()];
+        if(order == UNWATCHED)
+            return;
+
+        if(order == SWAPPED) {
+            SimpleActor tmp = a;
+            a = b;
+            b = tmp;
+        }
+        actorsA.add(a);
+        actorsB.add(b);
+        began.add(begin);
+    }
+
+    private SimpleActor getActor(Fixture fixture) {
+        Object userData = fixture.getBody().getUserData();
+        return userData instanceof SimpleActor ? (SimpleActor)userData : null;
+    }
+
+    /**
+     * Hands the contacts collected since the last call to the level script, called once after every step.
+     */
+    public void flush() {
+        if(actorsA.size == 0)
+            return;
+
+        for(Listener listener : listeners)
+            for(int i = 0; i < actorsA.size; i++)
+                listener.onContact(actorsA.get(i), actorsB.get(i), began.get(i));
+
+        if(luaOnContactsFunc == null) {
+            clear();
+            return;
+        }
+
+        LuaTable contacts = new LuaTable(actorsA.size, 0);
+        for(int i = 0; i < actorsA.size; i++) {
+            LuaTable entry = new LuaTable(0, 3);
+            entry.rawset(A, toLua(actorsA.get(i)));
+            entry.rawset(B, toLua(actorsB.get(i)));
+            entry.rawset(BEGAN, LuaValue.valueOf(began.get(i)));
+            contacts.rawset(i + 1, entry);
+        }
+        clear();
+        ScriptManager.getInstance().call(luaOnContactsFunc, "onContacts", contacts);
+    }
+
+    private LuaValue toLua(SimpleActor actor) {
+        LuaValue value = luaActors.get(actor);
+        if(value == null) {
+            value = LuaBindings.bind(actor);
+            luaActors.put(actor, value);
+        }
+        return value;
+    }
+
+    private void clear() {
+        actorsA.clear();
+        actorsB.clear();
+        began.clear();
     }
 
     @Override
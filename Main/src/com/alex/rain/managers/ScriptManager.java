@@ -0,0 +1,405 @@
+/*******************************************************************************
+ * Copyright 2013 See AUTHORS file.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE V3
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.gnu.org/licenses/gpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.alex.rain.managers;
+
+import com.alex.rain.simulation.LuaBindings;
+import org.luaj.vm2.Globals;
+import org.luaj.vm2.LoadState;
+import org.luaj.vm2.LuaClosure;
+import org.luaj.vm2.LuaFunction;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.LuaThread;
+import org.luaj.vm2.Prototype;
+import org.luaj.vm2.Varargs;
+import org.luaj.vm2.compiler.DumpState;
+import org.luaj.vm2.compiler.LuaC;
+import org.luaj.vm2.lib.DebugLib;
+import org.luaj.vm2.lib.TwoArgFunction;
+import org.luaj.vm2.lib.jse.JsePlatform;
+import org.luaj.vm2.luajc.JavaLoader;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compiles level scripts once. Compiled chunks are kept by the hash of their source, so restarting a level or
+ * coming back to it does not parse it again, and can also be written to a cache directory as Lua bytecode.
+ * main.lua is run once into a template; every level runs in fresh globals which fall back to the template,
+ * so what a level defines is gone with it.
+ * <p>
+ * With {@link #setCompileToJava(boolean)} chunks are compiled to JVM classes by luajc, which needs BCEL on the
+ * classpath and does not work on Android. Chunks luajc fails on run in the interpreter.
+ * <p>
+ * Callbacks the game makes every frame go through {@link #call(LuaValue, String, Varargs)}, which can stop them once
+ * they run more instructions or longer than a budget. There is no budget unless one is set: it is counted by the
+ * debug hook of the interpreter, and with the debug library on the interpreter keeps track of every call, which
+ * makes all interpreted scripts slower, not only the ones running out. The hook runs every
+ * {@value #HOOK_INTERVAL} instructions and not while the script is in Java, so a call can go on well past its time
+ * budget. Chunks compiled by luajc are not stopped.
+ */
+public class ScriptManager {
+    private static ScriptManager manager = new ScriptManager();
+
+    private final Map<String, Prototype> prototypes = new HashMap<String, Prototype>();
+    private final Map<String, JavaLoader> javaLoaders = new HashMap<String, JavaLoader>();
+    private final Set<String> javaFailed = new HashSet<String>();
+    private boolean compileToJava;
+    private Globals template;
+    private String preludeHash;
+    private File cacheDirectory;
+    private int compiledCount;
+    private int loadedCount;
+
+    /** The debug hook is called every this many instructions. */
+    private static final int HOOK_INTERVAL = 1000;
+    private final BudgetHook hook = new BudgetHook();
+    private DebugLib debugLib;
+    private int instructionBudget;
+    private long timeBudget;
+    private int instructions;
+    private long startTime;
+    private int overrunCount;
+    private String lastOverrun;
+
+    private ScriptManager() {}
+
+    public static ScriptManager getInstance() {
+        return manager;
+    }
+
+    /**
+     * Where compiled chunks are stored between runs of the game, null keeps them in memory only.
+     */
+    public void setCacheDirectory(File cacheDirectory) {
+        if(cacheDirectory != null)
+            cacheDirectory.mkdirs();
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    public File getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    /**
+     * Runs the shared part of all levels into the template, nothing happens if it already ran.
+     */
+    public void loadPrelude(String source) {
+        String hash = hash(source);
+        if(hash.equals(preludeHash))
+            return;
+
+        template = createTemplate();
+        load(source, hash, "main", template).call();
+        preludeHash = hash;
+    }
+
+    /**
+     * Runs a level script in fresh globals.
+     * @return globals of the level with the functions it defined
+     */
+    public Globals run(String source, String chunkName) {
+        Globals globals = newGlobals();
+        load(source, hash(source), chunkName, globals).call();
+        return globals;
+    }
+
+    /**
+     * Compiles chunks to JVM classes instead of running them in the interpreter, see the class comment.
+     */
+    public void setCompileToJava(boolean compileToJava) {
+        this.compileToJava = compileToJava;
+    }
+
+    public boolean isCompileToJava() {
+        return compileToJava;
+    }
+
+    /**
+     * Instructions a callback may run per call, 0 for no limit, which is the default. Counted in steps of
+     * {@value #HOOK_INTERVAL}.
+     */
+    public void setInstructionBudget(int instructionBudget) {
+        this.instructionBudget = instructionBudget;
+        updateDebugLib();
+    }
+
+    public int getInstructionBudget() {
+        return instructionBudget;
+    }
+
+    /**
+     * Milliseconds a callback may run per call, 0 for no limit, which is the default. Checked every
+     * {@value #HOOK_INTERVAL} instructions, time spent in Java between the checks is not cut short.
+     */
+    public void setTimeBudget(float milliseconds) {
+        timeBudget = (long)(milliseconds * 1000000);
+        updateDebugLib();
+    }
+
+    public float getTimeBudget() {
+        return timeBudget / 1000000f;
+    }
+
+    private boolean hasBudget() {
+        return instructionBudget > 0 || timeBudget > 0;
+    }
+
+    /**
+     * Calls a callback of a level within the budget.
+     * @param name of the callback, for the log
+     * @return what the callback returned, or null if it ran out of budget and was stopped
+     */
+    public Varargs call(LuaValue function, String name, Varargs args) {
+        if(!hasBudget() || template == null)
+            return function.invoke(args);
+
+        LuaThread thread = template.running;
+        if(thread.hookfunc != null)
+            // called from within another callback, which already has its budget
+            return function.invoke(args);
+
+        instructions = 0;
+        startTime = System.nanoTime();
+        thread.hookfunc = hook;
+        thread.hookcount = HOOK_INTERVAL;
+        thread.bytecodes = 0;
+        try {
+            return function.invoke(args);
+        } catch(BudgetExceeded e) {
+            overrunCount++;
+            lastOverrun = getChunkName(function) + "." + name;
+            System.out.println(String.format("error: %s stopped after %d instructions, %.1f ms",
+                    lastOverrun, instructions, (System.nanoTime() - startTime) / 1000000f));
+            return null;
+        } finally {
+            thread.hookfunc = null;
+            thread.hookcount = 0;
+        }
+    }
+
+    private static String getChunkName(LuaValue function) {
+        return function instanceof LuaClosure ? ((LuaClosure)function).p.source.tojstring() : "?";
+    }
+
+    /**
+     * Callbacks stopped for running out of budget since the start.
+     */
+    public int getOverrunCount() {
+        return overrunCount;
+    }
+
+    /**
+     * Level and name of the last callback which ran out of budget, null if none did.
+     */
+    public String getLastOverrun() {
+        return lastOverrun;
+    }
+
+    /**
+     * Thrown out of the debug hook, which reports exceptions instead of passing them on.
+     * It is not an exception either so pcall in the script does not catch it.
+     */
+    private static class BudgetExceeded extends Error {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    private class BudgetHook extends TwoArgFunction {
+        private final BudgetExceeded exceeded = new BudgetExceeded();
+
+        @Override
+        public LuaValue call(LuaValue event, LuaValue line) {
+            instructions += HOOK_INTERVAL;
+            if(instructionBudget > 0 && instructions >= instructionBudget)
+                throw exceeded;
+            if(timeBudget > 0 && System.nanoTime() - startTime >= timeBudget)
+                throw exceeded;
+            return NONE;
+        }
+    }
+
+    private LuaFunction load(String source, String hash, String chunkName, LuaValue env) {
+        Prototype prototype = getPrototype(source, hash, chunkName);
+        if(compileToJava && !javaFailed.contains(hash)) {
+            String className = "lua_" + hash;
+            try {
+                JavaLoader loader = javaLoaders.get(hash);
+                if(loader != null)
+                    return loader.load(className, env);
+                loader = new JavaLoader();
+                LuaFunction function = loader.load(prototype, className, chunkName, env);
+                javaLoaders.put(hash, loader);
+                return function;
+            } catch(NoClassDefFoundError e) {
+                System.out.println("error: luajc needs BCEL, using the interpreter. " + e);
+                compileToJava = false;
+            } catch(Throwable e) {
+                System.out.println("error: compiling " + chunkName + " to Java, using the interpreter. " + e);
+                javaFailed.add(hash);
+            }
+        }
+        return new LuaClosure(prototype, env);
+    }
+
+    private Globals createTemplate() {
+        Globals globals = JsePlatform.standardGlobals();
+        debugLib = new DebugLib();
+        debugLib.call(LuaValue.valueOf("debug"), globals);
+        // a level could take the hook away
+        globals.set("debug", LuaValue.NIL);
+        LuaBindings.install(globals);
+        globals.debuglib = hasBudget() ? debugLib : null;
+        return globals;
+    }
+
+    /**
+     * The interpreter keeps track of calls for the debug library, which costs time, only when there is a budget.
+     * Chunks loaded before a change keep what they had.
+     */
+    private void updateDebugLib() {
+        if(template != null)
+            template.debuglib = hasBudget() ? debugLib : null;
+    }
+
+    private Globals newGlobals() {
+        if(template == null)
+            template = createTemplate();
+
+        Globals globals = new Globals();
+        globals.STDIN = template.STDIN;
+        globals.STDOUT = template.STDOUT;
+        globals.STDERR = template.STDERR;
+        globals.FINDER = template.FINDER;
+        globals.compiler = template.compiler;
+        globals.baselib = template.baselib;
+        globals.package_ = template.package_;
+        globals.debuglib = template.debuglib;
+        LuaTable metatable = new LuaTable();
+        metatable.rawset(LuaValue.INDEX, template);
+        globals.setmetatable(metatable);
+        return globals;
+    }
+
+    private Prototype getPrototype(String source, String hash, String chunkName) {
+        Prototype prototype = prototypes.get(hash);
+        if(prototype != null)
+            return prototype;
+
+        prototype = readCache(hash);
+        if(prototype == null) {
+            try {
+                prototype = LuaC.compile(new ByteArrayInputStream(source.getBytes("UTF-8")), chunkName);
+            } catch(IOException e) {
+                throw new RuntimeException("error: compiling " + chunkName, e);
+            }
+            compiledCount++;
+            writeCache(hash, prototype);
+        } else {
+            loadedCount++;
+        }
+        prototypes.put(hash, prototype);
+        return prototype;
+    }
+
+    private Prototype readCache(String hash) {
+        if(cacheDirectory == null)
+            return null;
+        File file = new File(cacheDirectory, hash + ".luac");
+        if(!file.exists())
+            return null;
+
+        InputStream in = null;
+        try {
+            in = new BufferedInputStream(new FileInputStream(file));
+            return LoadState.loadBinaryChunk(in.read(), in, file.getName());
+        } catch(Exception e) {
+            // Written by another version of LuaJ or cut short, it is compiled again
+            return null;
+        } finally {
+            close(in);
+        }
+    }
+
+    private void writeCache(String hash, Prototype prototype) {
+        if(cacheDirectory == null)
+            return;
+
+        OutputStream out = null;
+        try {
+            out = new BufferedOutputStream(new FileOutputStream(new File(cacheDirectory, hash + ".luac")));
+            DumpState.dump(prototype, out, false);
+        } catch(IOException e) {
+            System.out.println("error: writing script cache. " + e);
+        } finally {
+            close(out);
+        }
+    }
+
+    private static void close(Closeable closeable) {
+        if(closeable == null)
+            return;
+        try {
+            closeable.close();
+        } catch(IOException ignored) {
+        }
+    }
+
+    /**
+     * SHA-1 of the source in hex, compiled chunks are kept by it.
+     */
+    public static String hash(String source) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] bytes = digest.digest(source.getBytes("UTF-8"));
+            StringBuilder hex = new StringBuilder(bytes.length * 2);
+            for(byte b : bytes)
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            return hex.toString();
+        } catch(NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        } catch(UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Chunks compiled from source since the start, chunks read from the cache directory are not counted.
+     */
+    public int getCompiledCount() {
+        return compiledCount;
+    }
+
+    public int getLoadedCount() {
+        return loadedCount;
+    }
+
+    /**
+     * Forgets the compiled chunks kept in memory.
+     */
+    public void clear() {
+        prototypes.clear();
+        javaLoaders.clear();
+        javaFailed.clear();
+    }
+}
@@ -31,6 +31,13 @@ public class Cloud extends KinematicActor {
     int direction;
 
     public Cloud() {
+        offset.set(-100, -50);
+        type = SimpleActor.TYPE.CLOUD;
+        setBodyBox(200, 100);
+    }
+
+    @Override
+    public void prepareGraphics() {
         sprite = TextureManager.getInstance().getSpriteFromDefaultAtlas("cloud");
 
         TextureRegion[][] tmp = sprite.split((int)sprite.getWidth() / FRAME_COLS, (int)sprite.getHeight() / FRAME_ROWS);
@@ -45,10 +52,6 @@ public class Cloud extends KinematicActor {
             }
         }
         animation = new Animation(0.25f, animTextureRegion);
-
-        offset.set(-100, -50);
-        type = SimpleActor.TYPE.CLOUD;
-        setBodyBox(200, 100);
     }
 
     @Override
@@ -77,13 +80,13 @@ public class Cloud extends KinematicActor {
     @Override
     public void draw(SpriteBatch batch, float parentAlpha) {
         if(direction < 0) {
-            batch.draw(animation.getKeyFrame(RainGame.getTime(), true), pos.x + offset.x, pos.y + offset.y);
+            batch.draw(animation.getKeyFrame(RainGame.getTime(), true), drawPos.x + offset.x, drawPos.y + offset.y);
         } else if(direction == 1) {
-            batch.draw(leftTextureRegion, pos.x + offset.x, pos.y + offset.y);
+            batch.draw(leftTextureRegion, drawPos.x + offset.x, drawPos.y + offset.y);
         } else if(direction == 2) {
-            batch.draw(rightTextureRegion, pos.x + offset.x, pos.y + offset.y);
+            batch.draw(rightTextureRegion, drawPos.x + offset.x, drawPos.y + offset.y);
         } else {
-            batch.draw(stayTextureRegion, pos.x + offset.x, pos.y + offset.y);
+            batch.draw(stayTextureRegion, drawPos.x + offset.x, drawPos.y + offset.y);
         }
     }
 
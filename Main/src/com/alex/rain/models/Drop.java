@@ -14,10 +14,20 @@
 package com.alex.rain.models;
 
 import com.alex.rain.RainGame;
+import com.alex.rain.simulation.GameSimulation;
+import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.physics.box2d.*;
 
+/**
+ * Drops are not scene2d actors, after adding to the world the drop only refers to its slot in {@link DropStore}.
+ * {@link DropTracker} moves it along when its slot changes. Once the drop is removed, culled, merged or absorbed
+ * by a pool, it is detached: it keeps the position and velocity last read and ignores changes.
+ */
 public class Drop extends SimpleActor {
     public final float RADIUS;
+    private DropStore store;
+    private int index = -1;
+    private boolean detached;
 
     public Drop() {
         super();
@@ -35,16 +45,89 @@ public class Drop extends SimpleActor {
 
         CircleShape circle = new CircleShape();
         circle.setRadius(RADIUS);
+        body.createFixture(createFixtureDef(circle));
 
+        circle.dispose();
+    }
+
+    /**
+     * Bodies of count drops at the packed world positions x1, y1, x2, y2, ... starting at xy[offset].
+     * The definitions and the shape are made once for all of them, the bodies refer to this drop.
+     */
+    public void createBodies(World physicsWorld, float[] xy, int offset, int count, Body[] bodies) {
+        BodyDef bodyDef = new BodyDef();
+        bodyDef.type = BodyDef.BodyType.DynamicBody;
+        CircleShape circle = new CircleShape();
+        circle.setRadius(RADIUS);
+        FixtureDef fixtureDef = createFixtureDef(circle);
+
+        for(int i = 0; i < count; i++) {
+            bodyDef.position.set(xy[offset + i * 2] * GameSimulation.WORLD_TO_BOX,
+                    xy[offset + i * 2 + 1] * GameSimulation.WORLD_TO_BOX);
+            Body body = physicsWorld.createBody(bodyDef);
+            body.createFixture(fixtureDef);
+            body.setUserData(this);
+            bodies[i] = body;
+        }
+
+        circle.dispose();
+    }
+
+    private static FixtureDef createFixtureDef(CircleShape circle) {
         FixtureDef fixtureDef = new FixtureDef();
         fixtureDef.shape = circle;
         fixtureDef.density = 1.0f;
         fixtureDef.friction = 0.1f;
         fixtureDef.restitution = 0.0f;
-        fixtureDef.filter.categoryBits = CATEGORY_ALL;
+        fixtureDef.filter.categoryBits = CATEGORY_DROP;
+        return fixtureDef;
+    }
 
-        Fixture fixture = body.createFixture(fixtureDef);
+    void attach(DropStore store, int index) {
+        this.store = store;
+        this.index = index;
+    }
 
-        circle.dispose();
+    /**
+     * The drop left the store, its body if it had one belongs to another drop by now.
+     */
+    void detach() {
+        store = null;
+        index = -1;
+        detached = true;
+    }
+
+    public boolean isDetached() {
+        return detached;
+    }
+
+    @Override
+    public void setPosition(float x, float y) {
+        if(store != null)
+            store.setPosition(index, x, y);
+        else if(!detached)
+            super.setPosition(x, y);
+    }
+
+    @Override
+    public Vector2 getPosition() {
+        if(store != null)
+            pos.set(store.getX(index), store.getY(index));
+        return pos;
+    }
+
+    @Override
+    public void setLinearVelocity(float x, float y) {
+        if(store != null)
+            store.setLinearVelocity(index, x, y);
+        else if(!detached)
+            super.setLinearVelocity(x, y);
+    }
+
+    @Override
+    public Vector2 getLinearVelocity() {
+        if(store != null)
+            linVel.set(store.getVelocityX(index), store.getVelocityY(index));
+        return linVel;
     }
 }
@@ -0,0 +1,307 @@
+/*******************************************************************************
+ * Copyright 2013 See AUTHORS file.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE V3
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.gnu.org/licenses/gpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.alex.rain.models;
+
+import com.alex.rain.simulation.GameSimulation;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.Body;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Structure-of-arrays storage for all drops of the world.
+ * Positions and velocities are kept in world units and refreshed from Box2D once per step,
+ * so the liquid solver, the renderer and level scripts read plain float arrays.
+ * Particles are drops without a body, {@link com.alex.rain.helpers.ParticleCollider} moves them instead of Box2D.
+ */
+public class DropStore {
+    private static final int INITIAL_CAPACITY = 256;
+
+    /**
+     * Notified when a drop is removed and the last drop takes its slot.
+     */
+    public interface Listener {
+        /**
+         * Per-drop state of slot from belongs to slot to now, slot from is free afterwards.
+         * Both are equal when the last drop itself was removed.
+         */
+        void onDropMoved(int from, int to);
+    }
+
+    private float[] xs;
+    private float[] ys;
+    private float[] prevXs;
+    private float[] prevYs;
+    private float[] vxs;
+    private float[] vys;
+    private float[] masses;
+    private Body[] bodies;
+    private boolean[] awake;
+    private int size;
+    private final List<Listener> listeners = new ArrayList<Listener>();
+
+    public DropStore() {
+        xs = new float[INITIAL_CAPACITY];
+        ys = new float[INITIAL_CAPACITY];
+        prevXs = new float[INITIAL_CAPACITY];
+        prevYs = new float[INITIAL_CAPACITY];
+        vxs = new float[INITIAL_CAPACITY];
+        vys = new float[INITIAL_CAPACITY];
+        masses = new float[INITIAL_CAPACITY];
+        bodies = new Body[INITIAL_CAPACITY];
+        awake = new boolean[INITIAL_CAPACITY];
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public int add(Body body) {
+        if(size == xs.length)
+            resize(size * 2);
+
+        int index = size++;
+        bodies[index] = body;
+        masses[index] = 1;
+        readBody(index);
+        prevXs[index] = xs[index];
+        prevYs[index] = ys[index];
+
+        return index;
+    }
+
+    /**
+     * Adds a particle, a drop without a body.
+     */
+    public int add(float x, float y) {
+        if(size == xs.length)
+            resize(size * 2);
+
+        int index = size++;
+        bodies[index] = null;
+        awake[index] = true;
+        masses[index] = 1;
+        xs[index] = prevXs[index] = x;
+        ys[index] = prevYs[index] = y;
+        vxs[index] = vys[index] = 0;
+
+        return index;
+    }
+
+    /**
+     * Removes the drop by moving the last drop into its slot, so indices of other drops may change.
+     * The body is not destroyed.
+     */
+    public void remove(int i) {
+        int last = --size;
+        xs[i] = xs[last];
+        ys[i] = ys[last];
+        prevXs[i] = prevXs[last];
+        prevYs[i] = prevYs[last];
+        vxs[i] = vxs[last];
+        vys[i] = vys[last];
+        masses[i] = masses[last];
+        bodies[i] = bodies[last];
+        bodies[last] = null;
+        awake[i] = awake[last];
+
+        for(Listener listener : listeners)
+            listener.onDropMoved(last, i);
+    }
+
+    /**
+     * Makes room for the given number of drops, so adding many drops grows the arrays once.
+     */
+    public void ensureCapacity(int capacity) {
+        if(capacity > xs.length)
+            resize(Math.max(capacity, xs.length * 2));
+    }
+
+    private void resize(int capacity) {
+        float[] tmp = new float[capacity];
+        System.arraycopy(xs, 0, tmp, 0, size);
+        xs = tmp;
+        tmp = new float[capacity];
+        System.arraycopy(ys, 0, tmp, 0, size);
+        ys = tmp;
+        tmp = new float[capacity];
+        System.arraycopy(prevXs, 0, tmp, 0, size);
+        prevXs = tmp;
+        tmp = new float[capacity];
+        System.arraycopy(prevYs, 0, tmp, 0, size);
+        prevYs = tmp;
+        tmp = new float[capacity];
+        System.arraycopy(vxs, 0, tmp, 0, size);
+        vxs = tmp;
+        tmp = new float[capacity];
+        System.arraycopy(vys, 0, tmp, 0, size);
+        vys = tmp;
+        tmp = new float[capacity];
+        System.arraycopy(masses, 0, tmp, 0, size);
+        masses = tmp;
+        Body[] tmpBodies = new Body[capacity];
+        System.arraycopy(bodies, 0, tmpBodies, 0, size);
+        bodies = tmpBodies;
+        boolean[] tmpAwake = new boolean[capacity];
+        System.arraycopy(awake, 0, tmpAwake, 0, size);
+        awake = tmpAwake;
+    }
+
+    /**
+     * Copies positions and velocities of all bodies into the arrays. Called once after each physics step.
+     */
+    public void readBodies() {
+        for(int i = 0; i < size; i++)
+            if(bodies[i] != null)
+                readBody(i);
+    }
+
+    /**
+     * Keeps the positions of the last step, the renderer interpolates between them and the current ones.
+     */
+    public void savePositions() {
+        System.arraycopy(xs, 0, prevXs, 0, size);
+        System.arraycopy(ys, 0, prevYs, 0, size);
+    }
+
+    private void readBody(int i) {
+        Vector2 p = bodies[i].getPosition();
+        xs[i] = p.x * GameSimulation.BOX_TO_WORLD;
+        ys[i] = p.y * GameSimulation.BOX_TO_WORLD;
+        Vector2 v = bodies[i].getLinearVelocity();
+        vxs[i] = v.x * GameSimulation.BOX_TO_WORLD;
+        vys[i] = v.y * GameSimulation.BOX_TO_WORLD;
+    }
+
+    public void setPosition(int i, float x, float y) {
+        if(bodies[i] != null)
+            bodies[i].setTransform(x * GameSimulation.WORLD_TO_BOX, y * GameSimulation.WORLD_TO_BOX, bodies[i].getAngle());
+        xs[i] = prevXs[i] = x;
+        ys[i] = prevYs[i] = y;
+    }
+
+    /**
+     * Like in Box2D a velocity other than zero wakes a sleeping particle.
+     */
+    public void setLinearVelocity(int i, float vx, float vy) {
+        if(bodies[i] != null)
+            bodies[i].setLinearVelocity(vx * GameSimulation.WORLD_TO_BOX, vy * GameSimulation.WORLD_TO_BOX);
+        else if(vx != 0 || vy != 0)
+            awake[i] = true;
+        vxs[i] = vx;
+        vys[i] = vy;
+    }
+
+    public boolean isParticle(int i) {
+        return bodies[i] == null;
+    }
+
+    public boolean isAwake(int i) {
+        return bodies[i] != null ? bodies[i].isAwake() : awake[i];
+    }
+
+    /**
+     * Sleeping particles keep their place and lose their velocity, like sleeping bodies.
+     */
+    public void setAwake(int i, boolean awake) {
+        if(bodies[i] != null) {
+            bodies[i].setAwake(awake);
+        } else {
+            this.awake[i] = awake;
+            if(!awake)
+                vxs[i] = vys[i] = 0;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public float getX(int i) {
+        return xs[i];
+    }
+
+    public float getY(int i) {
+        return ys[i];
+    }
+
+    public float getVelocityX(int i) {
+        return vxs[i];
+    }
+
+    public float getVelocityY(int i) {
+        return vys[i];
+    }
+
+    /**
+     * Number of standard drops this particle stands for, merged particles of a pool are heavier.
+     */
+    public float getMass(int i) {
+        return masses[i];
+    }
+
+    public void setMass(int i, float mass) {
+        masses[i] = mass;
+    }
+
+    public float getTotalMass() {
+        float mass = 0;
+        for(int i = 0; i < size; i++)
+            mass += masses[i];
+        return mass;
+    }
+
+    /**
+     * Null for particles.
+     */
+    public Body getBody(int i) {
+        return bodies[i];
+    }
+
+    /**
+     * Arrays may be reallocated when drops are added, so don't keep references between steps.
+     */
+    public float[] getXs() {
+        return xs;
+    }
+
+    public float[] getYs() {
+        return ys;
+    }
+
+    public float[] getPreviousXs() {
+        return prevXs;
+    }
+
+    public float[] getPreviousYs() {
+        return prevYs;
+    }
+
+    public float[] getVelocitiesX() {
+        return vxs;
+    }
+
+    public float[] getVelocitiesY() {
+        return vys;
+    }
+
+    public float[] getMasses() {
+        return masses;
+    }
+}
@@ -0,0 +1,49 @@
+/*******************************************************************************
+ * Copyright 2013 See AUTHORS file.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE V3
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.gnu.org/licenses/gpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.alex.rain.models;
+
+import com.badlogic.gdx.utils.IntMap;
+
+/**
+ * Keeps the {@link Drop} actors added to the world pointing at their slot in the {@link DropStore}.
+ * A removed drop detaches its actor, and the actor of the last drop follows it into the freed slot.
+ * Only the few drops made as actors are tracked, spawned drops have none.
+ */
+public class DropTracker implements DropStore.Listener {
+    private final DropStore dropStore;
+    private final IntMap<Drop> drops = new IntMap<Drop>();
+
+    public DropTracker(DropStore dropStore) {
+        this.dropStore = dropStore;
+        dropStore.addListener(this);
+    }
+
+    public void attach(Drop drop, int index) {
+        drops.put(index, drop);
+        drop.attach(dropStore, index);
+    }
+
+    @Override
+    public void onDropMoved(int from, int to) {
+        Drop removed = drops.remove(to);
+        if(removed != null)
+            removed.detach();
+        if(from == to)
+            return;
+
+        Drop moved = drops.remove(from);
+        if(moved != null)
+            attach(moved, to);
+    }
+}
@@ -18,8 +18,8 @@ import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 public abstract class DynamicActor extends SimpleActor {
     @Override
     public void draw(SpriteBatch batch, float parentAlpha) {
-        sprite.setPosition(pos.x + offset.x, pos.y + offset.y);
-        sprite.setRotation(rot);
+        sprite.setPosition(drawPos.x + offset.x, drawPos.y + offset.y);
+        sprite.setRotation(drawRot);
         sprite.draw(batch, parentAlpha);
     }
 }
@@ -13,24 +13,27 @@
  ******************************************************************************/
 package com.alex.rain.models;
 
-import com.alex.rain.managers.TextureManager;
 import com.badlogic.gdx.graphics.g2d.*;
 import com.badlogic.gdx.physics.box2d.*;
 
 public class Emitter extends KinematicActor {
     public Emitter() {
-        sprite = TextureManager.getInstance().getSpriteFromDefaultAtlas("emitter");
         offset.set(-32, -32);
         type = TYPE.EMITTER;
         setBodyBox(64, 64);
     }
 
+    @Override
+    public void prepareGraphics() {
+        loadSprite("emitter");
+        sprite.setOrigin(getWidth() / 2, getHeight() / 2);
+    }
+
     @Override
     public void createPhysicsActor(World physicsWorld) {
         PolygonShape polygonShape = new PolygonShape();
         polygonShape.setAsBox(getPhysicsWidth() / 2, getPhysicsHeight() / 2);
         offset.set(-getWidth() / 2, -getHeight() / 2);
-        sprite.setOrigin(getWidth() / 2, getHeight() / 2);
 
         FixtureDef fixtureDef = new FixtureDef();
         fixtureDef.shape = polygonShape;
@@ -52,8 +55,8 @@ public class Emitter extends KinematicActor {
 
     @Override
     public void draw(SpriteBatch batch, float parentAlpha) {
-        sprite.setPosition(pos.x + offset.x, pos.y + offset.y);
-        sprite.setRotation(rot);
+        sprite.setPosition(drawPos.x + offset.x, drawPos.y + offset.y);
+        sprite.setRotation(drawRot);
         sprite.draw(batch, parentAlpha);
     }
 }
@@ -15,19 +15,23 @@ package com.alex.rain.models;
 
 import com.alex.rain.helpers.Box2DSeparatorHelper;
 import com.alex.rain.managers.TextureManager;
-import com.alex.rain.stages.GameWorld;
+import com.alex.rain.simulation.GameSimulation;
 import com.badlogic.gdx.graphics.g2d.*;
 import com.badlogic.gdx.math.*;
 import com.badlogic.gdx.physics.box2d.BodyDef;
+import com.badlogic.gdx.physics.box2d.Fixture;
 import com.badlogic.gdx.physics.box2d.FixtureDef;
 import com.badlogic.gdx.physics.box2d.PolygonShape;
 import com.badlogic.gdx.physics.box2d.World;
+import com.badlogic.gdx.utils.Array;
 
 import java.util.ArrayList;
 import java.util.List;
 
 public class Ground extends SimpleActor {
     List<Vector2> vertices = new ArrayList<Vector2>();
+    float[][] fixtures;
+    short[] triangles;
 
     PolygonSprite poly;
     PolygonSpriteBatch polyBatch;
@@ -36,21 +40,14 @@ public class Ground extends SimpleActor {
     public Ground() {
         super();
         type = TYPE.GROUND;
-
-        textureRegion = TextureManager.getInstance().getRegionFromDefaultAtlas("grass");
-        polyBatch = new PolygonSpriteBatch();
     }
 
     @Override
-    public void prepareActor() {
-        float[] verticesFloat = new float[vertices.size() * 2];
-        for(int i = 0; i < vertices.size(); i++) {
-            verticesFloat[i*2] = vertices.get(i).x;
-            verticesFloat[i*2+1] = vertices.get(i).y;
-        }
+    public void prepareGraphics() {
+        textureRegion = TextureManager.getInstance().getRegionFromDefaultAtlas("grass");
+        polyBatch = new PolygonSpriteBatch();
 
-        PolygonRegion polyReg = new PolygonRegion(textureRegion, verticesFloat,
-                new EarClippingTriangulator().computeTriangles(verticesFloat).toArray());
+        PolygonRegion polyReg = new PolygonRegion(textureRegion, getOutline(), getTriangles());
 
         poly = new PolygonSprite(polyReg);
         poly.setOrigin(200, 200);
@@ -72,8 +69,17 @@ public class Ground extends SimpleActor {
         fixtureDef.friction = 0.4f;
         fixtureDef.restitution = 0.6f;*/
 
+        if(fixtures != null) {
+            for(float[] fixture : fixtures) {
+                polygonShape.set(fixture);
+                body.createFixture(fixtureDef);
+            }
+            polygonShape.dispose();
+            return;
+        }
+
         for(Vector2 v : vertices)
-            v.mul(GameWorld.WORLD_TO_BOX);
+            v.mul(GameSimulation.WORLD_TO_BOX);
 
         Box2DSeparatorHelper separatorHelper = new Box2DSeparatorHelper();
         separatorHelper.Separate(body, fixtureDef, vertices, 30);
@@ -81,13 +87,66 @@ public class Ground extends SimpleActor {
         polygonShape.dispose();
 
         for(Vector2 v : vertices)
-            v.mul(GameWorld.BOX_TO_WORLD);
+            v.mul(GameSimulation.BOX_TO_WORLD);
+    }
+
+    /**
+     * Convex parts in Box2D units and render triangles worked out beforehand, see
+     * {@link com.alex.rain.simulation.CompiledLevel}. The ground is then neither separated nor triangulated.
+     */
+    public void setShape(float[][] fixtures, short[] triangles) {
+        this.fixtures = fixtures;
+        this.triangles = triangles;
+    }
+
+    /**
+     * Vertices of the convex fixtures of the body in Box2D units, x1, y1, x2, y2, ... for every fixture.
+     */
+    public float[][] getFixtures() {
+        Array<Fixture> fixtureList = body.getFixtureList();
+        float[][] fixtures = new float[fixtureList.size][];
+        Vector2 vertex = new Vector2();
+        for(int i = 0; i < fixtureList.size; i++) {
+            PolygonShape shape = (PolygonShape)fixtureList.get(i).getShape();
+            fixtures[i] = new float[shape.getVertexCount() * 2];
+            for(int j = 0; j < shape.getVertexCount(); j++) {
+                shape.getVertex(j, vertex);
+                fixtures[i][j * 2] = vertex.x;
+                fixtures[i][j * 2 + 1] = vertex.y;
+            }
+        }
+        return fixtures;
+    }
+
+    /**
+     * Indices of the outline vertices, three for every triangle.
+     */
+    public short[] getTriangles() {
+        if(triangles == null)
+            triangles = new EarClippingTriangulator().computeTriangles(getOutline()).toArray();
+        return triangles;
+    }
+
+    /**
+     * Vertices in world units, x1, y1, x2, y2, ...
+     */
+    public float[] getOutline() {
+        float[] outline = new float[vertices.size() * 2];
+        for(int i = 0; i < vertices.size(); i++) {
+            outline[i * 2] = vertices.get(i).x;
+            outline[i * 2 + 1] = vertices.get(i).y;
+        }
+        return outline;
     }
 
     public void addVertex(float x, float y) {
         vertices.add(new Vector2(x, y));
     }
 
+    public List<Vector2> getVertices() {
+        return vertices;
+    }
+
     @Override
     public void draw(SpriteBatch batch, float parentAlpha) {
         batch.end();
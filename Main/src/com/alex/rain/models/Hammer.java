@@ -13,7 +13,6 @@
  ******************************************************************************/
 package com.alex.rain.models;
 
-import com.alex.rain.managers.TextureManager;
 import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.physics.box2d.BodyDef;
 import com.badlogic.gdx.physics.box2d.FixtureDef;
@@ -22,8 +21,14 @@ import com.badlogic.gdx.physics.box2d.World;
 
 public class Hammer extends DynamicActor {
     public Hammer() {
-        sprite = TextureManager.getInstance().getSpriteFromDefaultAtlas("hammer");
         setBodyBox(128, 128);
+        type = TYPE.HAMMER;
+    }
+
+    @Override
+    public void prepareGraphics() {
+        loadSprite("hammer");
+        sprite.setOrigin(getWidth() / 2, getHeight() / 2);
     }
 
     @Override
@@ -31,7 +36,6 @@ public class Hammer extends DynamicActor {
         PolygonShape polygonShape = new PolygonShape();
         polygonShape.setAsBox(getPhysicsWidth() / 7, getPhysicsHeight() / 2);
         offset.set(-getWidth() / 2, -getHeight() / 2);
-        sprite.setOrigin(getWidth() / 2, getHeight() / 2);
 
         FixtureDef fixtureDef = new FixtureDef();
         fixtureDef.shape = polygonShape;
@@ -13,7 +13,6 @@
  ******************************************************************************/
 package com.alex.rain.models;
 
-import com.alex.rain.managers.TextureManager;
 import com.badlogic.gdx.physics.box2d.BodyDef;
 import com.badlogic.gdx.physics.box2d.FixtureDef;
 import com.badlogic.gdx.physics.box2d.PolygonShape;
@@ -21,8 +20,14 @@ import com.badlogic.gdx.physics.box2d.World;
 
 public class Home extends DynamicActor {
     public Home() {
-        sprite = TextureManager.getInstance().getSpriteFromDefaultAtlas("home1");
         setBodyBox(32, 100);
+        type = TYPE.HOME;
+    }
+
+    @Override
+    public void prepareGraphics() {
+        loadSprite("home1");
+        sprite.setOrigin(getWidth() / 2, getHeight() / 2);
     }
 
     @Override
@@ -30,7 +35,6 @@ public class Home extends DynamicActor {
         PolygonShape polygonShape = new PolygonShape();
         polygonShape.setAsBox(getPhysicsWidth() / 2, getPhysicsHeight() / 2);
         offset.set(-getWidth() / 2, -getHeight() / 2);
-        sprite.setOrigin(getWidth() / 2, getHeight() / 2);
 
         FixtureDef fixtureDef = new FixtureDef();
         fixtureDef.shape = polygonShape;
@@ -13,7 +13,8 @@
  ******************************************************************************/
 package com.alex.rain.models;
 
-import com.alex.rain.stages.GameWorld;
+import com.alex.rain.managers.TextureManager;
+import com.alex.rain.simulation.GameSimulation;
 import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.g2d.*;
 import com.badlogic.gdx.math.Vector2;
@@ -26,8 +27,13 @@ public abstract class SimpleActor extends Actor {
     protected Vector2 pos = new Vector2();
     protected Vector2 offset = new Vector2();
     protected float rot;
+    protected Vector2 prevPos = new Vector2();
+    protected float prevRot;
+    protected Vector2 drawPos = new Vector2();
+    protected float drawRot;
     protected Vector2 linVel = new Vector2();
     protected Sprite sprite;
+    protected Vector2 spriteSize = new Vector2();
     protected Texture texture;
 
     public enum TYPE {
@@ -35,14 +41,19 @@ public abstract class SimpleActor extends Actor {
         DROP,
         GROUND,
         CLOUD,
-        EMITTER
+        EMITTER,
+        HOME,
+        HAMMER
     }
 
-    public final short CATEGORY_ALL = 0x0001;
-    public final short CATEGORY_CLOUD = 0x0002;
+    public static final short CATEGORY_ALL = 0x0001;
+    public static final short CATEGORY_CLOUD = 0x0002;
+    public static final short CATEGORY_DROP = 0x0004;
+    // Surfaces of pooled water, only drops rest on them
+    public static final short CATEGORY_POOL = 0x0008;
 
-    public final short MASK_ALL = -1;
-    public final short MASK_NONE = 0;
+    public static final short MASK_ALL = -1;
+    public static final short MASK_NONE = 0;
 
     public abstract void createPhysicsActor(World physicsWorld);
 
@@ -50,9 +61,22 @@ public abstract class SimpleActor extends Actor {
 
     }
 
+    /**
+     * Loads sprites before the actor is drawn the first time. Simulations without an OpenGL context never call it.
+     */
+    public void prepareGraphics() {
+
+    }
+
+    protected void loadSprite(String name) {
+        sprite = TextureManager.getInstance().getSpriteFromDefaultAtlas(name);
+        if(spriteSize.x > 0)
+            sprite.setSize(spriteSize.x, spriteSize.y);
+    }
+
     public void setRotation(float a) {
-        body.setTransform(getPosition(), (float)Math.toRadians(a));
-        rot = a;
+        body.setTransform(body.getPosition(), (float)Math.toRadians(a));
+        rot = prevRot = drawRot = a;
     }
 
     public float getRotation() {
@@ -60,8 +84,18 @@ public abstract class SimpleActor extends Actor {
     }
 
     public void setPosition(Vector2 vec) {
-        body.setTransform(vec.cpy().mul(GameWorld.WORLD_TO_BOX), body.getAngle());
-        pos.set(vec);
+        setPosition(vec.x, vec.y);
+    }
+
+    /**
+     * Moves the body to the position in world units, actors do not use the position of scene2d.
+     */
+    @Override
+    public void setPosition(float x, float y) {
+        body.setTransform(x * GameSimulation.WORLD_TO_BOX, y * GameSimulation.WORLD_TO_BOX, body.getAngle());
+        pos.set(x, y);
+        prevPos.set(x, y);
+        drawPos.set(x, y);
     }
 
     public Vector2 getPosition() {
@@ -69,8 +103,12 @@ public abstract class SimpleActor extends Actor {
     }
 
     public void setLinearVelocity(Vector2 vec) {
-        body.setLinearVelocity(vec.cpy().mul(GameWorld.WORLD_TO_BOX));
-        linVel.set(vec);
+        setLinearVelocity(vec.x, vec.y);
+    }
+
+    public void setLinearVelocity(float x, float y) {
+        body.setLinearVelocity(x * GameSimulation.WORLD_TO_BOX, y * GameSimulation.WORLD_TO_BOX);
+        linVel.set(x, y);
     }
 
     public Vector2 getLinearVelocity() {
@@ -79,11 +117,25 @@ public abstract class SimpleActor extends Actor {
 
     @Override
     public void act(float delta) {
-        pos = body.getPosition();
+        pos.set(body.getPosition()).mul(GameSimulation.BOX_TO_WORLD);
         rot = (float)Math.toDegrees(body.getAngle());
-        linVel = body.getLinearVelocity();
-        pos.mul(GameWorld.BOX_TO_WORLD);
-        linVel.mul(GameWorld.BOX_TO_WORLD);
+        linVel.set(body.getLinearVelocity()).mul(GameSimulation.BOX_TO_WORLD);
+    }
+
+    /**
+     * Remembers the body state before a physics step.
+     */
+    public void savePhysicsState() {
+        prevPos.set(body.getPosition()).mul(GameSimulation.BOX_TO_WORLD);
+        prevRot = (float)Math.toDegrees(body.getAngle());
+    }
+
+    /**
+     * Sets the drawing state between the last two physics steps.
+     */
+    public void interpolate(float alpha) {
+        drawPos.set(prevPos).lerp(pos, alpha);
+        drawRot = prevRot + (rot - prevRot) * alpha;
     }
 
     public void applyForceToCenter(Vector2 vec) {
@@ -112,14 +164,20 @@ public abstract class SimpleActor extends Actor {
     }
 
     public void setSpriteBox(float width, float height) {
-        sprite.setSize(width, height);
+        spriteSize.set(width, height);
+        if(sprite != null)
+            sprite.setSize(width, height);
+    }
+
+    public Vector2 getSpriteBox() {
+        return spriteSize;
     }
 
     public float getPhysicsWidth() {
-        return getWidth() * GameWorld.WORLD_TO_BOX;
+        return getWidth() * GameSimulation.WORLD_TO_BOX;
     }
 
     public float getPhysicsHeight() {
-        return getHeight() * GameWorld.WORLD_TO_BOX;
+        return getHeight() * GameSimulation.WORLD_TO_BOX;
     }
 }
@@ -0,0 +1,602 @@
+/*******************************************************************************
+ * Copyright 2013 See AUTHORS file.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE V3
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.gnu.org/licenses/gpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.alex.rain.simulation;
+
+import com.alex.rain.listeners.GameContactListener;
+import com.alex.rain.managers.ScriptManager;
+import com.alex.rain.models.DropStore;
+import com.alex.rain.models.Ground;
+import com.alex.rain.models.SimpleActor;
+import com.badlogic.gdx.physics.box2d.Body;
+import org.luaj.vm2.LuaClosure;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Prototype;
+import org.luaj.vm2.Varargs;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * What the onCreate of a level builds, recorded ahead of time: the settings, the actors and where they are,
+ * the grounds already split into convex fixtures and triangulated for drawing, the drops and the win
+ * conditions. Loading it is a few bulk reads, no Lua and no polygon work. The level script still gives the
+ * callbacks, but its onCreate is not run.
+ * <p>
+ * Compiling fails for levels whose onCreate does something the file cannot hold: Java calls by reflection
+ * other than the recorded setters, or globals set for the callbacks to read.
+ * <p>
+ * The file starts with the hash of main.lua and the level script it was compiled from, see
+ * {@link #hash(String, String)}, an empty hash for levels made from vertices of LevelCreator/polygon.html.
+ */
+public class CompiledLevel {
+    private static final int MAGIC = 0x524c564c;
+    private static final int VERSION = 2;
+    private static final byte ROTATION = 0, DROPS_INSIDE = 1, DROPS_ONLY_INSIDE = 2, CONTACT = 3;
+    /** x, y, rotation, width, height, sprite width, sprite height, velocity x and y and angular velocity. */
+    private static final int PLACEMENT = 10;
+    /** x, y, velocity x and y and mass of every drop. */
+    private static final int DROP = 5;
+    /** Methods called by reflection whose effect is recorded. */
+    private static final Set<String> RECORDED = new HashSet<String>(Arrays.asList("setKillRegion",
+            "setDropMergingEnabled", "setPhysicsEnabled", "setLiquidForcesEnabled", "setStepTime", "setMaxSubSteps",
+            "setPosition", "setLinearVelocity", "applyLinearImpulse", "setMass"));
+    private static final String[] CALLBACKS = {"onCheck", "onBeginContact", "onEndContact", "onContacts"};
+    private static final SimpleActor.TYPE[] TYPES = SimpleActor.TYPE.values();
+
+    private String sourceHash;
+    private String winHint;
+    private String liquidSolver;
+    private boolean poolsEnabled;
+    private boolean particleDrops;
+    private boolean raining;
+    private boolean dropMerging;
+    private boolean physics;
+    private boolean liquidForces;
+    private float checkRate;
+    private float stepTime;
+    private int maxSubSteps;
+    private float[] killRegion;
+    private String[] classNames;
+    private float[] placements;
+    private float[][] outlines;
+    private float[][][] fixtures;
+    private short[][] triangles;
+    private float[] drops;
+    private boolean[] particles;
+    private byte[] conditions;
+    private int[] conditionActors;
+    private float[] conditionValues;
+    private byte[] watched;
+
+    private CompiledLevel() {
+    }
+
+    /**
+     * Runs onCreate of the level script in a simulation without graphics and records what it built.
+     * @param sourceHash stored to tell when the scripts changed, see {@link #hash(String, String)}
+     * @throws IllegalArgumentException for levels which cannot be compiled
+     */
+    public static CompiledLevel compile(String prelude, String source, String sourceHash) {
+        ScriptManager scriptManager = ScriptManager.getInstance();
+        scriptManager.loadPrelude(prelude);
+        LuaValue script = scriptManager.run(source, "level");
+        Map<LuaValue, LuaValue[]> globals = snapshot(script);
+        final Set<String> unrecorded = new LinkedHashSet<String>();
+        GameSimulation simulation = new GameSimulation(script);
+        try {
+            LuaBindings.setReflectionListener(new LuaBindings.ReflectionListener() {
+                @Override
+                public void onReflected(String name, boolean call, LuaValue result) {
+                    // Java objects without bindings could be changed behind our back
+                    if(result == null || result.isuserdata() && !LuaBindings.isBound(result))
+                        unrecorded.add(name);
+                    else if(call && !RECORDED.contains(name) && !name.startsWith("get") && !name.startsWith("is"))
+                        unrecorded.add(name);
+                }
+            });
+            try {
+                simulation.createWorld();
+            } finally {
+                LuaBindings.setReflectionListener(null);
+            }
+
+            if(!unrecorded.isEmpty())
+                throw new IllegalArgumentException("onCreate uses " + unrecorded + ", which cannot be compiled");
+            Set<String> changed = findChangedGlobals(script, globals);
+            Set<String> read = findNamesOfCallbacks(script);
+            if(read != null)
+                changed.retainAll(read);
+            if(!changed.isEmpty())
+                throw new IllegalArgumentException("onCreate sets " + changed + ", which the callbacks could read");
+            return record(simulation, sourceHash);
+        } finally {
+            simulation.dispose();
+        }
+    }
+
+    /**
+     * Hash of main.lua and the level script, a compiled level is out of date when either changed.
+     */
+    public static String hash(String prelude, String source) {
+        return ScriptManager.hash(ScriptManager.hash(prelude) + ScriptManager.hash(source));
+    }
+
+    /**
+     * Names the callbacks and the functions of the script they call could read, taken from the strings in
+     * their code.
+     * @return null if a callback is not interpreted Lua, it could read any global
+     */
+    private static Set<String> findNamesOfCallbacks(LuaValue script) {
+        Set<String> names = new HashSet<String>();
+        List<LuaValue> functions = new ArrayList<LuaValue>();
+        for(String callback : CALLBACKS)
+            if(script.get(callback).isfunction())
+                functions.add(script.get(callback));
+        while(!functions.isEmpty()) {
+            LuaValue function = functions.remove(functions.size() - 1);
+            if(!(function instanceof LuaClosure))
+                return null;
+            addNames(((LuaClosure)function).p, script, names, functions);
+        }
+        return names;
+    }
+
+    private static void addNames(Prototype prototype, LuaValue script, Set<String> names, List<LuaValue> functions) {
+        for(LuaValue constant : prototype.k) {
+            if(constant.type() != LuaValue.TSTRING || !names.add(constant.tojstring()))
+                continue;
+            // Functions of the level script are followed, not those of main.lua or the libraries
+            LuaValue global = script.rawget(constant);
+            if(global.isfunction())
+                functions.add(global);
+        }
+        for(Prototype child : prototype.p)
+            addNames(child, script, names, functions);
+    }
+
+    /**
+     * Every global of the script with its value and, for tables, a copy of their fields.
+     */
+    private static Map<LuaValue, LuaValue[]> snapshot(LuaValue script) {
+        Map<LuaValue, LuaValue[]> globals = new HashMap<LuaValue, LuaValue[]>();
+        LuaValue key = LuaValue.NIL;
+        while(true) {
+            Varargs entry = script.next(key);
+            if((key = entry.arg1()).isnil())
+                break;
+            LuaValue value = entry.arg(2);
+            globals.put(key, new LuaValue[] {value, value.istable() ? copy(value) : null});
+        }
+        return globals;
+    }
+
+    private static LuaTable copy(LuaValue table) {
+        LuaTable copy = new LuaTable();
+        LuaValue key = LuaValue.NIL;
+        while(true) {
+            Varargs entry = table.next(key);
+            if((key = entry.arg1()).isnil())
+                break;
+            copy.rawset(key, entry.arg(2));
+        }
+        return copy;
+    }
+
+    /**
+     * Names of the globals which are not as in the snapshot, fields of tables are compared one level deep.
+     */
+    private static Set<String> findChangedGlobals(LuaValue script, Map<LuaValue, LuaValue[]> before) {
+        Set<String> changed = new TreeSet<String>();
+        Map<LuaValue, LuaValue[]> after = snapshot(script);
+        for(Map.Entry<LuaValue, LuaValue[]> entry : after.entrySet()) {
+            LuaValue[] value = entry.getValue();
+            LuaValue[] old = before.get(entry.getKey());
+            if(old == null || !value[0].raweq(old[0]) || value[1] != null && !equalFields(value[1], old[1]))
+                changed.add(entry.getKey().tojstring());
+        }
+        for(LuaValue key : before.keySet())
+            if(!after.containsKey(key))
+                changed.add(key.tojstring());
+        return changed;
+    }
+
+    private static boolean equalFields(LuaValue a, LuaValue b) {
+        LuaValue key = LuaValue.NIL;
+        int count = 0;
+        while(true) {
+            Varargs entry = a.next(key);
+            if((key = entry.arg1()).isnil())
+                break;
+            if(!entry.arg(2).raweq(b.rawget(key)))
+                return false;
+            count++;
+        }
+        return count == ((LuaTable)b).keyCount();
+    }
+
+    /**
+     * Records a simulation right after its world was created.
+     * @throws IllegalArgumentException for win conditions which cannot be written down
+     */
+    public static CompiledLevel record(GameSimulation simulation, String sourceHash) {
+        CompiledLevel level = new CompiledLevel();
+        level.sourceHash = sourceHash;
+        level.winHint = simulation.getWinHint();
+        level.liquidSolver = simulation.getLiquidSolverName();
+        level.poolsEnabled = simulation.isPoolsEnabled();
+        level.particleDrops = simulation.isParticleDropsEnabled();
+        level.raining = simulation.isRaining();
+        level.dropMerging = simulation.isDropMergingEnabled();
+        level.physics = simulation.isPhysicsEnabled();
+        level.liquidForces = simulation.isLiquidForcesEnabled();
+        level.checkRate = simulation.getCheckRate();
+        level.stepTime = simulation.getStepTime();
+        level.maxSubSteps = simulation.getMaxSubSteps();
+        level.killRegion = simulation.getDropRecycler().getKillRegion();
+
+        List<SimpleActor> actors = simulation.getActors();
+        int n = actors.size();
+        level.classNames = new String[n];
+        level.placements = new float[n * PLACEMENT];
+        level.outlines = new float[n][];
+        level.fixtures = new float[n][][];
+        level.triangles = new short[n][];
+        for(int i = 0; i < n; i++) {
+            SimpleActor actor = actors.get(i);
+            level.classNames[i] = actor.getClass().getName();
+            int p = i * PLACEMENT;
+            level.placements[p] = actor.getPosition().x;
+            level.placements[p + 1] = actor.getPosition().y;
+            level.placements[p + 2] = actor.getRotation();
+            level.placements[p + 3] = actor.getWidth();
+            level.placements[p + 4] = actor.getHeight();
+            level.placements[p + 5] = actor.getSpriteBox().x;
+            level.placements[p + 6] = actor.getSpriteBox().y;
+            Body body = actor.getBody();
+            if(body != null) {
+                level.placements[p + 7] = body.getLinearVelocity().x * GameSimulation.BOX_TO_WORLD;
+                level.placements[p + 8] = body.getLinearVelocity().y * GameSimulation.BOX_TO_WORLD;
+                level.placements[p + 9] = body.getAngularVelocity();
+            }
+            if(actor instanceof Ground) {
+                Ground ground = (Ground)actor;
+                level.outlines[i] = ground.getOutline();
+                level.fixtures[i] = ground.getFixtures();
+                level.triangles[i] = ground.getTriangles();
+            }
+        }
+
+        DropStore dropStore = simulation.getDropStore();
+        level.drops = new float[dropStore.size() * DROP];
+        level.particles = new boolean[dropStore.size()];
+        for(int i = 0; i < dropStore.size(); i++) {
+            int d = i * DROP;
+            level.drops[d] = dropStore.getX(i);
+            level.drops[d + 1] = dropStore.getY(i);
+            level.drops[d + 2] = dropStore.getVelocityX(i);
+            level.drops[d + 3] = dropStore.getVelocityY(i);
+            level.drops[d + 4] = dropStore.getMass(i);
+            level.particles[i] = dropStore.isParticle(i);
+        }
+
+        List<WinCondition> winConditions = simulation.getWinConditions();
+        level.conditions = new byte[winConditions.size()];
+        level.conditionActors = new int[winConditions.size() * 2];
+        level.conditionValues = new float[winConditions.size() * 5];
+        for(int i = 0; i < winConditions.size(); i++) {
+            WinCondition condition = winConditions.get(i);
+            int a = i * 2, v = i * 5;
+            if(condition instanceof RotationCondition) {
+                level.conditions[i] = ROTATION;
+                level.conditionActors[a] = indexOf(actors, ((RotationCondition)condition).getActor());
+                level.conditionValues[v] = ((RotationCondition)condition).getDegrees();
+            } else if(condition instanceof DropAreaCondition) {
+                DropAreaCondition area = (DropAreaCondition)condition;
+                level.conditions[i] = area.isExclusive() ? DROPS_ONLY_INSIDE : DROPS_INSIDE;
+                System.arraycopy(area.getArea(), 0, level.conditionValues, v, 5);
+            } else if(condition instanceof ContactCondition) {
+                level.conditions[i] = CONTACT;
+                level.conditionActors[a] = indexOf(actors, ((ContactCondition)condition).getActorA());
+                level.conditionActors[a + 1] = indexOf(actors, ((ContactCondition)condition).getActorB());
+            } else {
+                throw new IllegalArgumentException("cannot compile " + condition.getClass().getSimpleName());
+            }
+        }
+
+        GameContactListener contactListener = simulation.getContactListener();
+        byte[] pairs = new byte[TYPES.length * TYPES.length * 2];
+        int pairCount = 0;
+        for(SimpleActor.TYPE a : TYPES) {
+            for(SimpleActor.TYPE b : TYPES) {
+                if(contactListener.isWatched(a, b)) {
+                    pairs[pairCount * 2] = (byte)a.ordinal();
+                    pairs[pairCount * 2 + 1] = (byte)b.ordinal();
+                    pairCount++;
+                }
+            }
+        }
+        level.watched = new byte[pairCount * 2];
+        System.arraycopy(pairs, 0, level.watched, 0, level.watched.length);
+        return level;
+    }
+
+    private static int indexOf(List<SimpleActor> actors, SimpleActor actor) {
+        int index = actors.indexOf(actor);
+        if(index < 0)
+            throw new IllegalArgumentException("win condition on an actor which is not in the world");
+        return index;
+    }
+
+    /**
+     * Builds the recorded world, in place of the onCreate of the level script.
+     */
+    public void apply(GameSimulation simulation) {
+        if(winHint != null)
+            simulation.setWinHint(winHint);
+        if(!liquidSolver.equals(simulation.getLiquidSolverName()))
+            simulation.setLiquidSolver(liquidSolver);
+        simulation.setPoolsEnabled(poolsEnabled);
+        simulation.setRaining(raining);
+        simulation.setDropMergingEnabled(dropMerging);
+        simulation.setPhysicsEnabled(physics);
+        simulation.setLiquidForcesEnabled(liquidForces);
+        simulation.setCheckRate(checkRate);
+        simulation.setStepTime(stepTime);
+        simulation.setMaxSubSteps(maxSubSteps);
+        simulation.setKillRegion(killRegion[0], killRegion[1], killRegion[2], killRegion[3]);
+
+        SimpleActor[] actors = new SimpleActor[classNames.length];
+        for(int i = 0; i < actors.length; i++) {
+            SimpleActor actor = LuaBindings.newActor(classNames[i]);
+            if(actor == null)
+                throw new IllegalStateException("not an actor class: " + classNames[i]);
+            int p = i * PLACEMENT;
+            actor.setBodyBox(placements[p + 3], placements[p + 4]);
+            actor.setSpriteBox(placements[p + 5], placements[p + 6]);
+            if(outlines[i] != null) {
+                Ground ground = (Ground)actor;
+                for(int k = 0; k < outlines[i].length; k += 2)
+                    ground.addVertex(outlines[i][k], outlines[i][k + 1]);
+                ground.setShape(fixtures[i], triangles[i]);
+            }
+            simulation.add(actor);
+            actor.setPosition(placements[p], placements[p + 1]);
+            actor.setRotation(placements[p + 2]);
+            if(actor.getBody() != null) {
+                actor.setLinearVelocity(placements[p + 7], placements[p + 8]);
+                actor.getBody().setAngularVelocity(placements[p + 9]);
+            }
+            actors[i] = actor;
+        }
+
+        addDrops(simulation);
+        simulation.setParticleDropsEnabled(particleDrops);
+
+        for(int i = 0; i < conditions.length; i++) {
+            int a = i * 2, v = i * 5;
+            switch(conditions[i]) {
+                case ROTATION:
+                    simulation.winWhenRotated(actors[conditionActors[a]], conditionValues[v]);
+                    break;
+                case DROPS_INSIDE:
+                    simulation.winWhenDropsInside(conditionValues[v], conditionValues[v + 1],
+                            conditionValues[v + 2], conditionValues[v + 3], conditionValues[v + 4]);
+                    break;
+                case DROPS_ONLY_INSIDE:
+                    simulation.winWhenDropsOnlyInside(conditionValues[v], conditionValues[v + 1],
+                            conditionValues[v + 2], conditionValues[v + 3], conditionValues[v + 4]);
+                    break;
+                case CONTACT:
+                    simulation.winOnContact(actors[conditionActors[a]], actors[conditionActors[a + 1]]);
+                    break;
+            }
+        }
+
+        GameContactListener contactListener = simulation.getContactListener();
+        for(int i = 0; i < watched.length; i += 2)
+            contactListener.watch(TYPES[watched[i]], TYPES[watched[i + 1]]);
+    }
+
+    /**
+     * Adds the drops in runs of particles and drops with a body.
+     */
+    private void addDrops(GameSimulation simulation) {
+        DropStore dropStore = simulation.getDropStore();
+        int count = particles.length;
+        for(int start = 0; start < count; ) {
+            int end = start + 1;
+            while(end < count && particles[end] == particles[start])
+                end++;
+            float[] xy = new float[(end - start) * 2];
+            for(int i = start; i < end; i++) {
+                xy[(i - start) * 2] = drops[i * DROP];
+                xy[(i - start) * 2 + 1] = drops[i * DROP + 1];
+            }
+            simulation.setParticleDropsEnabled(particles[start]);
+            int first = simulation.addDrops(xy, end - start);
+            for(int i = start; i < end; i++) {
+                int d = i * DROP;
+                dropStore.setLinearVelocity(first + i - start, drops[d + 2], drops[d + 3]);
+                dropStore.setMass(first + i - start, drops[d + 4]);
+            }
+            start = end;
+        }
+    }
+
+    public void write(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        writeString(data, sourceHash);
+        writeString(data, winHint);
+        writeString(data, liquidSolver);
+        data.writeByte((poolsEnabled ? 1 : 0) | (particleDrops ? 2 : 0) | (raining ? 4 : 0) | (dropMerging ? 8 : 0) |
+                (physics ? 16 : 0) | (liquidForces ? 32 : 0));
+        data.writeFloat(checkRate);
+        data.writeFloat(stepTime);
+        data.writeInt(maxSubSteps);
+        writeFloats(data, killRegion);
+
+        data.writeInt(classNames.length);
+        for(int i = 0; i < classNames.length; i++)
+            writeString(data, classNames[i]);
+        writeFloats(data, placements);
+        for(int i = 0; i < classNames.length; i++) {
+            if(outlines[i] == null) {
+                data.writeInt(-1);
+                continue;
+            }
+            writeFloats(data, outlines[i]);
+            data.writeInt(fixtures[i].length);
+            for(float[] fixture : fixtures[i])
+                writeFloats(data, fixture);
+            data.writeInt(triangles[i].length);
+            for(short index : triangles[i])
+                data.writeShort(index);
+        }
+
+        writeFloats(data, drops);
+        for(boolean particle : particles)
+            data.writeBoolean(particle);
+
+        data.writeInt(conditions.length);
+        data.write(conditions);
+        for(int actor : conditionActors)
+            data.writeInt(actor);
+        writeFloats(data, conditionValues);
+
+        data.writeInt(watched.length);
+        data.write(watched);
+        data.flush();
+    }
+
+    private static void writeString(DataOutputStream data, String string) throws IOException {
+        if(string == null) {
+            data.writeInt(-1);
+            return;
+        }
+        byte[] bytes = string.getBytes("UTF-8");
+        data.writeInt(bytes.length);
+        data.write(bytes);
+    }
+
+    private static void writeFloats(DataOutputStream data, float[] floats) throws IOException {
+        data.writeInt(floats.length);
+        for(float f : floats)
+            data.writeFloat(f);
+    }
+
+    /**
+     * @throws IOException if the bytes are not a compiled level of this version
+     */
+    public static CompiledLevel read(byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if(buffer.getInt() != MAGIC)
+            throw new IOException("not a compiled level");
+        int version = buffer.getInt();
+        if(version != VERSION)
+            throw new IOException("compiled level version " + version + ", expected " + VERSION);
+
+        CompiledLevel level = new CompiledLevel();
+        level.sourceHash = readString(buffer);
+        level.winHint = readString(buffer);
+        level.liquidSolver = readString(buffer);
+        byte flags = buffer.get();
+        level.poolsEnabled = (flags & 1) != 0;
+        level.particleDrops = (flags & 2) != 0;
+        level.raining = (flags & 4) != 0;
+        level.dropMerging = (flags & 8) != 0;
+        level.physics = (flags & 16) != 0;
+        level.liquidForces = (flags & 32) != 0;
+        level.checkRate = buffer.getFloat();
+        level.stepTime = buffer.getFloat();
+        level.maxSubSteps = buffer.getInt();
+        level.killRegion = readFloats(buffer);
+
+        int n = buffer.getInt();
+        level.classNames = new String[n];
+        for(int i = 0; i < n; i++)
+            level.classNames[i] = readString(buffer);
+        level.placements = readFloats(buffer);
+        level.outlines = new float[n][];
+        level.fixtures = new float[n][][];
+        level.triangles = new short[n][];
+        for(int i = 0; i < n; i++) {
+            level.outlines[i] = readFloats(buffer);
+            if(level.outlines[i] == null)
+                continue;
+            level.fixtures[i] = new float[buffer.getInt()][];
+            for(int k = 0; k < level.fixtures[i].length; k++)
+                level.fixtures[i][k] = readFloats(buffer);
+            level.triangles[i] = new short[buffer.getInt()];
+            buffer.asShortBuffer().get(level.triangles[i]);
+            buffer.position(buffer.position() + level.triangles[i].length * 2);
+        }
+
+        level.drops = readFloats(buffer);
+        level.particles = new boolean[level.drops.length / DROP];
+        for(int i = 0; i < level.particles.length; i++)
+            level.particles[i] = buffer.get() != 0;
+
+        level.conditions = new byte[buffer.getInt()];
+        buffer.get(level.conditions);
+        level.conditionActors = new int[level.conditions.length * 2];
+        buffer.asIntBuffer().get(level.conditionActors);
+        buffer.position(buffer.position() + level.conditionActors.length * 4);
+        level.conditionValues = readFloats(buffer);
+
+        level.watched = new byte[buffer.getInt()];
+        buffer.get(level.watched);
+        return level;
+    }
+
+    private static String readString(ByteBuffer buffer) throws UnsupportedEncodingException {
+        int length = buffer.getInt();
+        if(length < 0)
+            return null;
+        String string = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, "UTF-8");
+        buffer.position(buffer.position() + length);
+        return string;
+    }
+
+    /**
+     * @return null for a length of -1
+     */
+    private static float[] readFloats(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if(length < 0)
+            return null;
+        float[] floats = new float[length];
+        buffer.asFloatBuffer().get(floats);
+        buffer.position(buffer.position() + length * 4);
+        return floats;
+    }
+
+    public String getSourceHash() {
+        return sourceHash;
+    }
+
+    public int getActorCount() {
+        return classNames.length;
+    }
+
+    public int getDropCount() {
+        return particles.length;
+    }
+}
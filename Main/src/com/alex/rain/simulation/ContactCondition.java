@@ -0,0 +1,51 @@
+/*******************************************************************************
+ * Copyright 2013 See AUTHORS file.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE V3
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.gnu.org/licenses/gpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.alex.rain.simulation;
+
+import com.alex.rain.listeners.GameContactListener;
+import com.alex.rain.models.SimpleActor;
+
+/**
+ * Met once two actors have touched. It is told about contacts by {@link GameContactListener}
+ * and never looks at the world itself.
+ */
+public class ContactCondition implements WinCondition, GameContactListener.Listener {
+    private final SimpleActor actorA;
+    private final SimpleActor actorB;
+    private boolean met;
+
+    public ContactCondition(SimpleActor actorA, SimpleActor actorB) {
+        this.actorA = actorA;
+        this.actorB = actorB;
+    }
+
+    @Override
+    public void onContact(SimpleActor a, SimpleActor b, boolean began) {
+        if(began && (a == actorA && b == actorB || a == actorB && b == actorA))
+            met = true;
+    }
+
+    @Override
+    public boolean isMet() {
+        return met;
+    }
+
+    SimpleActor getActorA() {
+        return actorA;
+    }
+
+    SimpleActor getActorB() {
+        return actorB;
+    }
+}
@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * Copyright 2013 See AUTHORS file.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE V3
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.gnu.org/licenses/gpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.alex.rain.simulation;
+
+import com.alex.rain.models.DropStore;
+
+/**
+ * Met while more than the given mass of water is inside a rectangle. An exclusive condition also needs
+ * every drop of the level to be inside it.
+ */
+public class DropAreaCondition implements WinCondition {
+    private final DropStore dropStore;
+    private final float minX, minY, maxX, maxY;
+    private final float mass;
+    private final boolean exclusive;
+
+    public DropAreaCondition(DropStore dropStore, float x, float y, float width, float height, float mass,
+                             boolean exclusive) {
+        this.dropStore = dropStore;
+        minX = x;
+        minY = y;
+        maxX = x + width;
+        maxY = y + height;
+        this.mass = mass;
+        this.exclusive = exclusive;
+    }
+
+    @Override
+    public boolean isMet() {
+        final float[] xs = dropStore.getXs();
+        final float[] ys = dropStore.getYs();
+        final float[] masses = dropStore.getMasses();
+        float inside = 0;
+        for(int i = 0; i < dropStore.size(); i++) {
+            if(xs[i] > minX && xs[i] < maxX && ys[i] > minY && ys[i] < maxY)
+                inside += masses[i];
+            else if(exclusive)
+                return false;
+        }
+        return inside > mass;
+    }
+
+    /**
+     * x, y, width, height and mass as given to the constructor.
+     */
+    float[] getArea() {
+        return new float[] {minX, minY, maxX - minX, maxY - minY, mass};
+    }
+
+    boolean isExclusive() {
+        return exclusive;
+    }
+}
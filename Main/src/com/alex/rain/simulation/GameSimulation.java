@@ -0,0 +1,746 @@
+/*******************************************************************************
+ * Copyright 2013 See AUTHORS file.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE V3
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.gnu.org/licenses/gpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.alex.rain.simulation;
+
+import com.alex.rain.RainGame;
+import com.alex.rain.helpers.DropMergeHelper;
+import com.alex.rain.helpers.DropQuery;
+import com.alex.rain.helpers.DropRecycler;
+import com.alex.rain.helpers.LiquidHelper;
+import com.alex.rain.helpers.LiquidSolver;
+import com.alex.rain.helpers.ParticleCollider;
+import com.alex.rain.helpers.PositionBasedFluidsSolver;
+import com.alex.rain.helpers.ShallowWaterPool;
+import com.alex.rain.listeners.GameContactListener;
+import com.alex.rain.managers.ScriptManager;
+import com.alex.rain.models.Cloud;
+import com.alex.rain.models.Drop;
+import com.alex.rain.models.DropStore;
+import com.alex.rain.models.DropTracker;
+import com.alex.rain.models.Emitter;
+import com.alex.rain.models.Ground;
+import com.alex.rain.models.SimpleActor;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.BodyDef;
+import com.badlogic.gdx.physics.box2d.World;
+import org.luaj.vm2.LuaFunction;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Everything of a level that does not need an OpenGL context: the Box2D world, the liquid, pools,
+ * the Lua level script and spawning of drops. {@link com.alex.rain.stages.GameWorld} draws it,
+ * tools and tests can run it on their own.
+ */
+public class GameSimulation {
+    private final World physicsWorld = new World(new Vector2(0, -9.8f), true);
+    private final List<SimpleActor> actorList = new ArrayList<SimpleActor>();
+    private final List<Listener> listeners = new ArrayList<Listener>();
+    private final DropStore dropStore = new DropStore();
+    private final DropRecycler dropRecycler = new DropRecycler(physicsWorld, dropStore);
+    private final DropQuery dropQuery = new DropQuery(dropStore);
+    private final DropTracker dropTracker = new DropTracker(dropStore);
+    private LuaValue luaDropStore;
+    private LiquidSolver liquidSolver;
+    private DropMergeHelper dropMergeHelper;
+    private final ParticleCollider particleCollider;
+    private final List<ShallowWaterPool> pools = new ArrayList<ShallowWaterPool>();
+    private boolean poolsEnabled;
+    private String liquidSolverName = LIQUID_DEFAULT;
+    private LuaFunction luaOnCreateFunc;
+    private LuaFunction luaOnCheckFunc;
+    private LuaFunction luaOnBeginContactFunc;
+    private LuaFunction luaOnEndContactFunc;
+    private LuaFunction luaOnContactsFunc;
+    private final List<WinCondition> winConditions = new ArrayList<WinCondition>();
+    private float checkInterval = 0.1f;
+    private float timeLastCheck;
+    private boolean wonGame;
+    private float physicsTime;
+    private float accumulator;
+    private float stepTime = 1/60f;
+    private int maxSubSteps = 5;
+    private float interpolationAlpha;
+    private float timeLastDrop;
+    private boolean itRain;
+    private Cloud cloud;
+    private Emitter emitter;
+    private String winHint;
+    private final boolean lightVersion;
+    private int dropsMax;
+    private boolean physicsEnabled = true;
+    private boolean liquidForcesEnabled = true;
+    private boolean dropMergingEnabled = true;
+    private GameContactListener contactListener;
+    private final float MIN_POOL_WIDTH = 100;
+    public static final float WORLD_TO_BOX = 0.1f;
+    public static final float BOX_TO_WORLD = 1 / WORLD_TO_BOX;
+    public static final String LIQUID_DEFAULT = "default";
+    public static final String LIQUID_PBF = "pbf";
+
+    public interface Listener {
+        /**
+         * Called for every actor added to the world except drops, they live in the {@link DropStore}.
+         */
+        void onActorAdded(SimpleActor actor);
+    }
+
+    /**
+     * @param script source of main.lua followed by the level script
+     */
+    public GameSimulation(Reader script) {
+        this(runScript(script));
+    }
+
+    /**
+     * @param script globals of the level script, see {@link #loadLevel(String)}, null for a level without one
+     */
+    public GameSimulation(LuaValue script) {
+        lightVersion = RainGame.isLightVersion();
+        dropsMax = lightVersion ? 1000 : 1000;
+        liquidSolver = createLiquidSolver(LIQUID_DEFAULT, dropStore, lightVersion, physicsWorld.getGravity());
+        dropMergeHelper = new DropMergeHelper(dropRecycler, liquidSolver);
+        Vector2 gravity = physicsWorld.getGravity();
+        particleCollider = new ParticleCollider(dropStore, new Drop().RADIUS * BOX_TO_WORLD,
+                gravity.x * BOX_TO_WORLD, gravity.y * BOX_TO_WORLD);
+
+        if(script != null) {
+            luaOnCheckFunc = getFunction(script, "onCheck");
+            luaOnCreateFunc = getFunction(script, "onCreate");
+            luaOnBeginContactFunc = getFunction(script, "onBeginContact");
+            luaOnEndContactFunc = getFunction(script, "onEndContact");
+            luaOnContactsFunc = getFunction(script, "onContacts");
+        }
+
+        contactListener = new GameContactListener(luaOnBeginContactFunc, luaOnEndContactFunc, luaOnContactsFunc);
+        physicsWorld.setContactListener(contactListener);
+    }
+
+    /**
+     * Creates the liquid solver called name, {@link #LIQUID_DEFAULT} or {@link #LIQUID_PBF}.
+     * @param gravity gravity of the physics world in Box2D units
+     */
+    public static LiquidSolver createLiquidSolver(String name, DropStore dropStore, boolean lightVersion, Vector2 gravity) {
+        if(LIQUID_PBF.equals(name))
+            return new PositionBasedFluidsSolver(dropStore, lightVersion, gravity.x * BOX_TO_WORLD, gravity.y * BOX_TO_WORLD);
+        if(!LIQUID_DEFAULT.equals(name))
+            throw new IllegalArgumentException("unknown liquid solver: " + name);
+
+        LiquidHelper liquidHelper = new LiquidHelper(dropStore, lightVersion);
+        liquidHelper.setSymmetric(true);
+        liquidHelper.setSleepingEnabled(true);
+        liquidHelper.setKernelTableSize(Integer.getInteger("rain.liquid.kernelTable", 0));
+        if(!lightVersion)
+            liquidHelper.setThreads(Runtime.getRuntime().availableProcessors());
+        return liquidHelper;
+    }
+
+    private static LuaFunction getFunction(LuaValue script, String name) {
+        LuaValue function = script.get(name);
+        return function.isfunction() ? (LuaFunction)function : null;
+    }
+
+    private static LuaValue runScript(Reader script) {
+        try {
+            StringBuilder source = new StringBuilder();
+            char[] buffer = new char[4096];
+            for(int n; (n = script.read(buffer)) > 0; )
+                source.append(buffer, 0, n);
+            return ScriptManager.getInstance().run(source.toString(), "level");
+        } catch (Exception e) {
+            System.out.println("error: level script. " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Runs the level script from the internal files, levels without a script fall back to test.lua.
+     * main.lua is run once for all levels and compiled scripts are reused, see {@link ScriptManager}.
+     * @return globals of the level script, null if it failed
+     */
+    public static LuaValue loadLevel(String name) {
+        String filename = "data/" + name + ".lua";
+        if(!Gdx.files.internal(filename).exists())
+            filename = "data/test.lua";
+        try {
+            ScriptManager scriptManager = ScriptManager.getInstance();
+            scriptManager.loadPrelude(Gdx.files.internal("data/main.lua").readString());
+            return scriptManager.run(Gdx.files.internal(filename).readString(), name);
+        } catch (Exception e) {
+            System.out.println("error: level script. " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Reads the level compiled from the level script, see {@link CompiledLevel}.
+     * @return null if there is none or the script changed since it was compiled
+     */
+    public static CompiledLevel loadCompiledLevel(String name) {
+        FileHandle file = Gdx.files.internal("data/" + name + ".level");
+        if(!file.exists())
+            return null;
+        try {
+            CompiledLevel level = CompiledLevel.read(file.readBytes());
+            FileHandle script = Gdx.files.internal("data/" + name + ".lua");
+            if(level.getSourceHash().length() > 0 && script.exists() && !level.getSourceHash().equals(
+                    CompiledLevel.hash(Gdx.files.internal("data/main.lua").readString(), script.readString()))) {
+                System.out.println("error: " + file.name() + " is older than " + script.name() + " or main.lua, using the script.");
+                return null;
+            }
+            return level;
+        } catch(Exception e) {
+            System.out.println("error: compiled level. " + e);
+            return null;
+        }
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void add(SimpleActor actor) {
+        if(actor.getType() == SimpleActor.TYPE.DROP && dropRecycler.isParticles()) {
+            Drop drop = (Drop)actor;
+            dropTracker.attach(drop, dropStore.add(drop.getPosition().x, drop.getPosition().y));
+            return;
+        }
+
+        actor.createPhysicsActor(physicsWorld);
+        if(actor.getBody() != null)
+            actor.getBody().setUserData(actor);
+
+        if(actor.getType() == SimpleActor.TYPE.GROUND) {
+            particleCollider.addGround((Ground)actor);
+            if(poolsEnabled)
+                createPools((Ground)actor);
+        }
+
+        if(actor.getType() == SimpleActor.TYPE.DROP) {
+            Drop drop = (Drop)actor;
+            dropTracker.attach(drop, dropStore.add(drop.getBody()));
+            return;
+        }
+
+        actor.prepareActor();
+        actorList.add(actor);
+
+        if(actor.getType() == SimpleActor.TYPE.CLOUD)
+            cloud = (Cloud)actor;
+        else if(actor.getType() == SimpleActor.TYPE.EMITTER)
+            emitter = (Emitter)actor;
+
+        for(Listener listener : listeners)
+            listener.onActorAdded(actor);
+    }
+
+    /**
+     * Drop at the given world position, its body comes from the recycler.
+     * @return index of the drop in the store
+     */
+    public int addDrop(float x, float y) {
+        return dropRecycler.obtain(x, y, 0, 0);
+    }
+
+    /**
+     * Drops at the packed world positions x1, y1, x2, y2, ... in one go, the liquid grows its buffers once.
+     * @return index of the first drop in the store, the others follow it
+     */
+    public int addDrops(float[] xy, int count) {
+        int first = dropRecycler.obtain(xy, 0, count, 0, 0);
+        liquidSolver.ensureCapacity(dropStore.size());
+        return first;
+    }
+
+    /**
+     * Fills the rectangle evenly with count drops, see {@link #addDrops(float[], int)}.
+     */
+    public int addDrops(int count, float x, float y, float width, float height) {
+        return addDrops(getGrid(count, x, y, width, height), count);
+    }
+
+    /**
+     * Centers of count cells of an even grid over the rectangle, packed as x1, y1, x2, y2, ...
+     * Rows are filled from the bottom left.
+     */
+    public static float[] getGrid(int count, float x, float y, float width, float height) {
+        int columns = Math.max(1, Math.round((float)Math.sqrt(count * width / Math.max(height, 1e-6f))));
+        int rows = (count + columns - 1) / columns;
+        float cellWidth = width / columns;
+        float cellHeight = rows > 0 ? height / rows : 0;
+        float[] xy = new float[count * 2];
+        for(int i = 0; i < count; i++) {
+            xy[i * 2] = x + (i % columns + 0.5f) * cellWidth;
+            xy[i * 2 + 1] = y + (i / columns + 0.5f) * cellHeight;
+        }
+        return xy;
+    }
+
+    public void createWorld() {
+        LuaValue luaWorld = LuaBindings.bind(this);
+        if(luaOnCreateFunc != null)
+            luaOnCreateFunc.call(luaWorld);
+    }
+
+    /**
+     * Builds the world from a compiled level instead of the onCreate of the script, the script is only
+     * used for its callbacks.
+     * @param level see {@link #loadCompiledLevel(String)}, null runs onCreate
+     */
+    public void createWorld(CompiledLevel level) {
+        if(level == null)
+            createWorld();
+        else
+            level.apply(this);
+    }
+
+    /**
+     * Advances the world by the frame time in fixed steps and checks the winning condition.
+     */
+    public void update(float delta) {
+        accumulator += delta;
+        int steps = 0;
+        while(accumulator >= stepTime && steps < maxSubSteps) {
+            step();
+            accumulator -= stepTime;
+            steps++;
+        }
+        // Drop the time we could not simulate instead of spiralling into more steps next frame
+        if(accumulator >= stepTime)
+            accumulator %= stepTime;
+
+        float alpha = accumulator / stepTime;
+        for(SimpleActor actor : actorList) {
+            actor.act(delta);
+            actor.interpolate(alpha);
+        }
+        interpolationAlpha = alpha;
+
+        if(wonGame || physicsTime - timeLastCheck < checkInterval)
+            return;
+        timeLastCheck = physicsTime;
+        wonGame = checkWin();
+    }
+
+    /**
+     * The level is won when all of its win conditions and its Lua onCheck agree. A level with neither is never won.
+     */
+    private boolean checkWin() {
+        if(winConditions.isEmpty() && luaOnCheckFunc == null)
+            return false;
+        for(int i = 0; i < winConditions.size(); i++)
+            if(!winConditions.get(i).isMet())
+                return false;
+
+        if(luaOnCheckFunc == null)
+            return true;
+        if(luaDropStore == null)
+            luaDropStore = LuaBindings.bind(dropStore);
+        Varargs retvals = ScriptManager.getInstance().call(luaOnCheckFunc, "onCheck", luaDropStore);
+        if(retvals == null) {
+            // ran out of budget, checked again next frame
+            timeLastCheck -= checkInterval;
+            return false;
+        }
+        return retvals.toboolean(1);
+    }
+
+    /**
+     * One fixed physics step.
+     */
+    public void step() {
+        float deltaT = stepTime;
+        physicsTime += deltaT;
+        dropStore.savePositions();
+        for(SimpleActor actor : actorList)
+            actor.savePhysicsState();
+
+        if(liquidForcesEnabled) {
+            wakeLiquidAroundBodies();
+            liquidSolver.applyLiquidConstraint(deltaT);
+            if(dropMergingEnabled)
+                dropMergeHelper.update();
+        }
+        if(!pools.isEmpty())
+            updatePools(deltaT);
+        if(physicsEnabled) {
+            particleCollider.update(deltaT, actorList);
+            physicsWorld.step(deltaT, 6, 3);
+            contactListener.flush();
+        }
+        dropStore.readBodies();
+        dropRecycler.cull();
+
+        if(itRain && !wonGame && cloud != null && dropStore.size() < dropsMax) {
+            if(physicsTime - timeLastDrop > (lightVersion ? 0.09 : 0.05)) {
+                Random r = new Random();
+                float offset = r.nextFloat() * cloud.getWidth() * 2/3;
+                dropRecycler.obtain(cloud.getPosition().x - cloud.getWidth() / 3 + offset, cloud.getPosition().y, 0, -200);
+                timeLastDrop = physicsTime;
+            }
+        }
+
+        if(itRain && !wonGame && emitter != null && dropStore.size() < dropsMax) {
+            if(physicsTime - timeLastDrop > (lightVersion ? 0.09 : 0.05)) {
+                Random r = new Random();
+                float offset = r.nextFloat() * emitter.getWidth() * 2/3;
+                dropRecycler.obtain(emitter.getPosition().x - emitter.getWidth() / 3 + offset, emitter.getPosition().y, 300, 0);
+                timeLastDrop = physicsTime;
+            }
+        }
+        dropQuery.invalidate();
+    }
+
+    private void wakeLiquidAroundBodies() {
+        for(SimpleActor actor : actorList) {
+            Body body = actor.getBody();
+            if(body == null || body.getType() != BodyDef.BodyType.DynamicBody || !body.isAwake())
+                continue;
+
+            float radius = (float)Math.sqrt(actor.getWidth() * actor.getWidth() + actor.getHeight() * actor.getHeight()) / 2;
+            float x = body.getPosition().x * BOX_TO_WORLD;
+            float y = body.getPosition().y * BOX_TO_WORLD;
+            liquidSolver.wakeRegion(x - radius, y - radius, x + radius, y + radius);
+        }
+    }
+
+    private void updatePools(float deltaT) {
+        float gravity = -physicsWorld.getGravity().y * BOX_TO_WORLD;
+        for(ShallowWaterPool pool : pools) {
+            // Bodies standing in a pool push its water out as drops
+            for(SimpleActor actor : actorList) {
+                Body body = actor.getBody();
+                if(body == null || body.getType() != BodyDef.BodyType.DynamicBody)
+                    continue;
+
+                float radius = (float)Math.sqrt(actor.getWidth() * actor.getWidth() + actor.getHeight() * actor.getHeight()) / 2;
+                float x = body.getPosition().x * BOX_TO_WORLD;
+                float y = body.getPosition().y * BOX_TO_WORLD;
+                pool.block(x - radius, y - radius, x + radius, y + radius);
+            }
+            pool.update(deltaT, dropRecycler, gravity);
+        }
+    }
+
+    /**
+     * Creates a pool on every flat top edge of the ground whose neighbouring vertices are both higher.
+     * The pool is as deep as the lower of them.
+     */
+    private void createPools(Ground ground) {
+        List<Vector2> vertices = ground.getVertices();
+        int n = vertices.size();
+        float area = 0;
+        for(int k = 0; k < n; k++) {
+            Vector2 a = vertices.get(k);
+            Vector2 b = vertices.get((k + 1) % n);
+            area += a.x * b.y - b.x * a.y;
+        }
+
+        float dropRadius = new Drop().RADIUS * BOX_TO_WORLD;
+        for(int k = 0; k < n; k++) {
+            Vector2 prev = vertices.get((k + n - 1) % n);
+            Vector2 a = vertices.get(k);
+            Vector2 b = vertices.get((k + 1) % n);
+            Vector2 next = vertices.get((k + 2) % n);
+            // The ground is below the edge when it runs against the winding
+            boolean top = area > 0 ? b.x < a.x : b.x > a.x;
+            if(Math.abs(a.y - b.y) > 0.5f || Math.abs(a.x - b.x) < MIN_POOL_WIDTH || !top || prev.y <= a.y || next.y <= b.y)
+                continue;
+
+            pools.add(new ShallowWaterPool(physicsWorld, Math.min(a.x, b.x), Math.max(a.x, b.x), a.y,
+                    Math.min(prev.y, next.y) - a.y, dropRadius));
+        }
+    }
+
+    /**
+     * Water resting on long flat ground is kept as a heightfield instead of drops.
+     * Turning it off gives the water back as drops.
+     */
+    public void setPoolsEnabled(boolean poolsEnabled) {
+        if(poolsEnabled == this.poolsEnabled)
+            return;
+
+        this.poolsEnabled = poolsEnabled;
+        if(poolsEnabled) {
+            for(SimpleActor actor : actorList)
+                if(actor.getType() == SimpleActor.TYPE.GROUND)
+                    createPools((Ground)actor);
+        } else {
+            for(ShallowWaterPool pool : pools)
+                pool.release(dropRecycler);
+            pools.clear();
+        }
+    }
+
+    public boolean isPoolsEnabled() {
+        return poolsEnabled;
+    }
+
+    /**
+     * Physics and liquid always advance by this step, several times per frame if needed.
+     */
+    public void setStepTime(float stepTime) {
+        this.stepTime = stepTime;
+    }
+
+    public float getStepTime() {
+        return stepTime;
+    }
+
+    public void setMaxSubSteps(int maxSubSteps) {
+        this.maxSubSteps = maxSubSteps;
+    }
+
+    public int getMaxSubSteps() {
+        return maxSubSteps;
+    }
+
+    /**
+     * Settled drops deep in pools are merged into heavier particles, so more water fits into dropsMax.
+     */
+    public void setDropMergingEnabled(boolean dropMergingEnabled) {
+        this.dropMergingEnabled = dropMergingEnabled;
+        if(!dropMergingEnabled)
+            dropMergeHelper.splitAll();
+    }
+
+    public boolean isDropMergingEnabled() {
+        return dropMergingEnabled;
+    }
+
+    /**
+     * Replaces the liquid solver, levels call it from onCreate. Merged particles are split first,
+     * only the default solver lets drops sleep and merge.
+     */
+    public void setLiquidSolver(String name) {
+        dropMergeHelper.splitAll();
+        LiquidSolver solver = createLiquidSolver(name, dropStore, lightVersion, physicsWorld.getGravity());
+        liquidSolver.dispose();
+        liquidSolver = solver;
+        liquidSolverName = name;
+        dropMergeHelper = new DropMergeHelper(dropRecycler, liquidSolver);
+    }
+
+    public String getLiquidSolverName() {
+        return liquidSolverName;
+    }
+
+    /**
+     * Drops spawned from now on are particles without a Box2D body, they collide with the ground through
+     * a distance field and touch dynamic bodies only. Call it from onCreate before adding drops.
+     */
+    public void setParticleDropsEnabled(boolean particleDropsEnabled) {
+        dropRecycler.setParticles(particleDropsEnabled);
+    }
+
+    public boolean isParticleDropsEnabled() {
+        return dropRecycler.isParticles();
+    }
+
+    public void addWinCondition(WinCondition condition) {
+        winConditions.add(condition);
+    }
+
+    /**
+     * The actor has to be rotated by at least degrees in either direction.
+     */
+    public void winWhenRotated(SimpleActor actor, float degrees) {
+        addWinCondition(new RotationCondition(actor, degrees));
+    }
+
+    /**
+     * More than mass of water has to be inside the rectangle.
+     */
+    public void winWhenDropsInside(float x, float y, float width, float height, float mass) {
+        addWinCondition(new DropAreaCondition(dropStore, x, y, width, height, mass, false));
+    }
+
+    /**
+     * More than mass of water has to be inside the rectangle and no drop outside of it.
+     */
+    public void winWhenDropsOnlyInside(float x, float y, float width, float height, float mass) {
+        addWinCondition(new DropAreaCondition(dropStore, x, y, width, height, mass, true));
+    }
+
+    /**
+     * The two actors have to touch once.
+     */
+    public void winOnContact(SimpleActor actorA, SimpleActor actorB) {
+        ContactCondition condition = new ContactCondition(actorA, actorB);
+        contactListener.addListener(condition, actorA.getType(), actorB.getType());
+        addWinCondition(condition);
+    }
+
+    /**
+     * How often per second of game time the winning condition is checked, 0 checks it every frame.
+     */
+    public void setCheckRate(float checksPerSecond) {
+        checkInterval = checksPerSecond > 0 ? 1 / checksPerSecond : 0;
+    }
+
+    public float getCheckRate() {
+        return checkInterval > 0 ? 1 / checkInterval : 0;
+    }
+
+    /**
+     * Contacts between actors of the two types are passed to the level script's onContacts after every step.
+     * @param typeA name of a {@link SimpleActor.TYPE}, it is the a field of the contacts
+     */
+    public void watchContacts(String typeA, String typeB) {
+        contactListener.watch(SimpleActor.TYPE.valueOf(typeA), SimpleActor.TYPE.valueOf(typeB));
+    }
+
+    /**
+     * Drops leaving this region are taken out of the world and their bodies reused for new drops.
+     */
+    public void setKillRegion(float minX, float minY, float maxX, float maxY) {
+        dropRecycler.setKillRegion(minX, minY, maxX, maxY);
+    }
+
+    public void setPhysicsEnabled(boolean physicsEnabled) {
+        this.physicsEnabled = physicsEnabled;
+    }
+
+    public boolean isPhysicsEnabled() {
+        return physicsEnabled;
+    }
+
+    public void setLiquidForcesEnabled(boolean liquidForcesEnabled) {
+        this.liquidForcesEnabled = liquidForcesEnabled;
+    }
+
+    public boolean isLiquidForcesEnabled() {
+        return liquidForcesEnabled;
+    }
+
+    /**
+     * The cloud or emitter pours drops while it rains.
+     */
+    public void setRaining(boolean itRain) {
+        this.itRain = itRain;
+    }
+
+    public boolean isRaining() {
+        return itRain;
+    }
+
+    public boolean isWon() {
+        return wonGame;
+    }
+
+    public World getPhysicsWorld() {
+        return physicsWorld;
+    }
+
+    public DropStore getDropStore() {
+        return dropStore;
+    }
+
+    /**
+     * Drops inside rectangles and polygons, for win conditions and level scripts.
+     */
+    public DropQuery getDropQuery() {
+        return dropQuery;
+    }
+
+    List<WinCondition> getWinConditions() {
+        return winConditions;
+    }
+
+    GameContactListener getContactListener() {
+        return contactListener;
+    }
+
+    public DropRecycler getDropRecycler() {
+        return dropRecycler;
+    }
+
+    public LiquidSolver getLiquidSolver() {
+        return liquidSolver;
+    }
+
+    public ParticleCollider getParticleCollider() {
+        return particleCollider;
+    }
+
+    public DropMergeHelper getDropMergeHelper() {
+        return dropMergeHelper;
+    }
+
+    public List<ShallowWaterPool> getPools() {
+        return pools;
+    }
+
+    public List<SimpleActor> getActors() {
+        return actorList;
+    }
+
+    public Cloud getCloud() {
+        return cloud;
+    }
+
+    public Emitter getEmitter() {
+        return emitter;
+    }
+
+    public int getDropsMax() {
+        return dropsMax;
+    }
+
+    public float getTime() {
+        return physicsTime;
+    }
+
+    /**
+     * Position between the last two physics steps, for drawing.
+     */
+    public float getInterpolationAlpha() {
+        return interpolationAlpha;
+    }
+
+    public int getDropsNumber() {
+        return dropStore.size();
+    }
+
+    /**
+     * Amount of water in standard drops, merged particles count for all drops they hold.
+     */
+    public int getWaterAmount() {
+        float amount = dropStore.getTotalMass();
+        for(ShallowWaterPool pool : pools)
+            amount += pool.getVolume();
+        return Math.round(amount);
+    }
+
+    public void setWinHint(String winHint) {
+        this.winHint = winHint;
+    }
+
+    public String getWinHint() {
+        return winHint;
+    }
+
+    public void dispose() {
+        liquidSolver.dispose();
+        physicsWorld.dispose();
+    }
+}
@@ -0,0 +1,525 @@
+/*******************************************************************************
+ * Copyright 2013 See AUTHORS file.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE V3
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.gnu.org/licenses/gpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.alex.rain.simulation;
+
+import com.alex.rain.helpers.DropQuery;
+import com.alex.rain.models.*;
+import com.badlogic.gdx.math.Vector2;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaUserdata;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+import org.luaj.vm2.lib.OneArgFunction;
+import org.luaj.vm2.lib.ThreeArgFunction;
+import org.luaj.vm2.lib.TwoArgFunction;
+import org.luaj.vm2.lib.VarArgFunction;
+import org.luaj.vm2.lib.jse.CoerceJavaToLua;
+
+/**
+ * Lua bindings of the world, the actors and the drop store written by hand, a call from a level script is a
+ * plain function call instead of LuaJ's reflective method lookup and argument coercion. Every kind of object
+ * has one metatable, so two bindings of the same object are equal in Lua. Actors made with luajava.newInstance
+ * and actors returned by Java methods are bound as well, so they are equal to the actors of contacts. Methods and
+ * fields without a binding are still found by reflection. {@link #install(LuaValue)} adds create(className)
+ * which makes actors without reflection:
+ * <pre>
+ * ground = create(Ground)
+ * home = create(Home)
+ * home:setPosition(650, 300)
+ * </pre>
+ * Many actors are added at once with world:spawn(className, count, x, y, width, height), drops also from packed
+ * positions with world:addDrops({x1, y1, x2, y2, ...}). world:countDrops, getDropMass, getDropDensity and
+ * getDropVelocity look at the drops in a rectangle or polygon without going through all of them in Lua.
+ */
+public class LuaBindings {
+    private static final LuaTable worldMetatable;
+    private static final LuaTable actorMetatable;
+    private static final LuaTable dropStoreMetatable;
+    private static ReflectionListener reflectionListener;
+
+    /**
+     * Told about every use of the reflective fallback, see {@link CompiledLevel}.
+     */
+    interface ReflectionListener {
+        /**
+         * @param call true for a method call, false for a field
+         * @param result what the method or the field read gave, null when the field was set
+         */
+        void onReflected(String name, boolean call, LuaValue result);
+    }
+
+    static {
+        LuaTable world = new LuaTable();
+        String[] names = {"add", "setWinHint", "setRaining", "setPoolsEnabled", "setLiquidSolver",
+                "setParticleDropsEnabled", "setCheckRate", "addDrops"};
+        for(int i = 0; i < names.length; i++)
+            world.set(names[i], new WorldFunction2(i, names[i]));
+        names = new String[] {"winWhenRotated", "winOnContact", "watchContacts", "addDrop"};
+        for(int i = 0; i < names.length; i++)
+            world.set(names[i], new WorldFunction3(i, names[i]));
+        names = new String[] {"winWhenDropsInside", "winWhenDropsOnlyInside"};
+        for(int i = 0; i < names.length; i++)
+            world.set(names[i], new WorldFunctionN(i, names[i]));
+        world.set("spawn", new Spawn());
+        names = new String[] {"countDrops", "getDropMass", "getDropDensity", "getDropVelocity"};
+        for(int i = 0; i < names.length; i++)
+            world.set(names[i], new DropQueryFunction(i, names[i]));
+        worldMetatable = methods(world);
+
+        LuaTable actor = new LuaTable();
+        names = new String[] {"getRotation", "getType"};
+        for(int i = 0; i < names.length; i++)
+            actor.set(names[i], new ActorFunction1(i, names[i]));
+        actor.set("setRotation", new ActorFunction2(0, "setRotation"));
+        names = new String[] {"setPosition", "setLinearVelocity", "setBodyBox", "setSpriteBox", "addVertex"};
+        for(int i = 0; i < names.length; i++)
+            actor.set(names[i], new ActorFunction3(i, names[i]));
+        actorMetatable = methods(actor);
+
+        LuaTable dropStore = new LuaTable();
+        dropStore.set("size", new DropStoreFunction1(0, "size"));
+        names = new String[] {"getX", "getY", "getMass", "getVelocityX", "getVelocityY"};
+        for(int i = 0; i < names.length; i++)
+            dropStore.set(names[i], new DropStoreFunction2(i, names[i]));
+        dropStoreMetatable = methods(dropStore);
+    }
+
+    private LuaBindings() {
+    }
+
+    /**
+     * Adds the global function create(className) for the actor classes named in main.lua.
+     */
+    public static void install(LuaValue globals) {
+        globals.set("create", new Create());
+        LuaValue luajava = globals.get("luajava");
+        if(luajava.istable()) {
+            luajava.set("newInstance", new BindResult(luajava.get("newInstance")));
+            luajava.set("new", new BindResult(luajava.get("new")));
+        }
+    }
+
+    public static LuaValue bind(GameSimulation world) {
+        return new LuaUserdata(world, worldMetatable);
+    }
+
+    public static LuaValue bind(SimpleActor actor) {
+        return new LuaUserdata(actor, actorMetatable);
+    }
+
+    static void setReflectionListener(ReflectionListener listener) {
+        reflectionListener = listener;
+    }
+
+    /**
+     * Tells if the value is the world, an actor or the drop store with their bindings.
+     */
+    static boolean isBound(LuaValue value) {
+        LuaValue metatable = value.getmetatable();
+        return metatable == worldMetatable || metatable == actorMetatable || metatable == dropStoreMetatable;
+    }
+
+    /**
+     * The binding of an actor or drop store the value holds, other values as they are.
+     */
+    static LuaValue bind(LuaValue value) {
+        if(value.isuserdata(SimpleActor.class) && value.getmetatable() != actorMetatable)
+            return bind((SimpleActor)value.touserdata());
+        if(value.isuserdata(DropStore.class) && value.getmetatable() != dropStoreMetatable)
+            return bind((DropStore)value.touserdata());
+        return value;
+    }
+
+    public static LuaValue bind(DropStore dropStore) {
+        return new LuaUserdata(dropStore, dropStoreMetatable);
+    }
+
+    /**
+     * The metatable of one kind of object. A bound method is found by one table lookup, other names are looked up
+     * on the Java object by reflection, a method of that name is kept in the table.
+     */
+    private static LuaTable methods(LuaTable methods) {
+        LuaTable metatable = new LuaTable();
+        metatable.set(LuaValue.INDEX, new ReflectedIndex(methods));
+        metatable.set(LuaValue.NEWINDEX, new ReflectedNewIndex());
+        return metatable;
+    }
+
+    private static class ReflectedIndex extends TwoArgFunction {
+        private final LuaTable methods;
+
+        ReflectedIndex(LuaTable methods) {
+            this.methods = methods;
+        }
+
+        @Override
+        public LuaValue call(LuaValue self, LuaValue key) {
+            LuaValue method = methods.rawget(key);
+            if(!method.isnil())
+                return method;
+
+            LuaValue value = CoerceJavaToLua.coerce(self.checkuserdata()).get(key);
+            if(!value.isfunction()) {
+                value = LuaBindings.bind(value);
+                if(reflectionListener != null)
+                    reflectionListener.onReflected(key.tojstring(), false, value);
+                return value;
+            }
+            method = new ReflectedMethod(key);
+            methods.rawset(key, method);
+            return method;
+        }
+    }
+
+    private static class ReflectedNewIndex extends ThreeArgFunction {
+        @Override
+        public LuaValue call(LuaValue self, LuaValue key, LuaValue value) {
+            CoerceJavaToLua.coerce(self.checkuserdata()).set(key, value);
+            if(reflectionListener != null)
+                reflectionListener.onReflected(key.tojstring(), false, null);
+            return NONE;
+        }
+    }
+
+    private static class ReflectedMethod extends VarArgFunction {
+        private final LuaValue key;
+
+        ReflectedMethod(LuaValue key) {
+            this.key = key;
+        }
+
+        @Override
+        public Varargs invoke(Varargs args) {
+            LuaValue self = CoerceJavaToLua.coerce(args.checkuserdata(1));
+            LuaValue method = self.get(key);
+            if(!method.isfunction())
+                return method;
+            Varargs result = method.invoke(varargsOf(self, args.subargs(2)));
+            if(result.narg() > 0)
+                result = LuaBindings.bind(result.arg1());
+            if(reflectionListener != null)
+                reflectionListener.onReflected(key.tojstring(), true, result.arg1());
+            return result;
+        }
+    }
+
+    /**
+     * Calls a function of luajava and binds the actor it returns.
+     */
+    private static class BindResult extends VarArgFunction {
+        private final LuaValue function;
+
+        BindResult(LuaValue function) {
+            this.function = function;
+        }
+
+        @Override
+        public Varargs invoke(Varargs args) {
+            return LuaBindings.bind(function.invoke(args).arg1());
+        }
+    }
+
+    /**
+     * Actor of one of the classes create() knows, null for any other class.
+     */
+    static SimpleActor newActor(String name) {
+        if(name.equals(Ground.class.getName()))
+            return new Ground();
+        else if(name.equals(Home.class.getName()))
+            return new Home();
+        else if(name.equals(Hammer.class.getName()))
+            return new Hammer();
+        else if(name.equals(Cloud.class.getName()))
+            return new Cloud();
+        else if(name.equals(Emitter.class.getName()))
+            return new Emitter();
+        else if(name.equals(Drop.class.getName()))
+            return new Drop();
+        return null;
+    }
+
+    private static class Create extends OneArgFunction {
+        @Override
+        public LuaValue call(LuaValue className) {
+            SimpleActor actor = newActor(className.checkjstring());
+            if(actor == null)
+                return argerror(1, "not an actor class: " + className);
+            return LuaBindings.bind(actor);
+        }
+    }
+
+    /**
+     * world:spawn(className, count, x, y, width, height) fills the rectangle evenly with count actors.
+     * Drops go into the world in one go and the index of the first drop is returned, other actors are
+     * returned in a table.
+     */
+    private static class Spawn extends VarArgFunction {
+        Spawn() {
+            name = "spawn";
+        }
+
+        @Override
+        public Varargs invoke(Varargs args) {
+            GameSimulation world = world(args.arg1());
+            String className = args.checkjstring(2);
+            int count = args.checkint(3);
+            float x = (float)args.checkdouble(4);
+            float y = (float)args.checkdouble(5);
+            float width = (float)args.checkdouble(6);
+            float height = (float)args.checkdouble(7);
+            if(count < 0)
+                return argerror(3, "negative count");
+            if(className.equals(Drop.class.getName()))
+                return valueOf(world.addDrops(count, x, y, width, height));
+
+            SimpleActor actor = newActor(className);
+            if(actor == null)
+                return argerror(2, "not an actor class: " + className);
+            float[] xy = GameSimulation.getGrid(count, x, y, width, height);
+            LuaTable actors = new LuaTable(count, 0);
+            for(int i = 0; i < count; i++) {
+                if(i > 0)
+                    actor = newActor(className);
+                world.add(actor);
+                actor.setPosition(xy[i * 2], xy[i * 2 + 1]);
+                actors.rawset(i + 1, LuaBindings.bind(actor));
+            }
+            return actors;
+        }
+    }
+
+    private static GameSimulation world(LuaValue self) {
+        return (GameSimulation)self.checkuserdata(GameSimulation.class);
+    }
+
+    private static SimpleActor actor(LuaValue value) {
+        return (SimpleActor)value.checkuserdata(SimpleActor.class);
+    }
+
+    private static DropStore dropStore(LuaValue self) {
+        return (DropStore)self.checkuserdata(DropStore.class);
+    }
+
+    private static class WorldFunction2 extends TwoArgFunction {
+        WorldFunction2(int opcode, String name) {
+            this.opcode = opcode;
+            this.name = name;
+        }
+
+        @Override
+        public LuaValue call(LuaValue self, LuaValue a) {
+            GameSimulation world = world(self);
+            switch(opcode) {
+                case 0: world.add(actor(a)); break;
+                case 1: world.setWinHint(a.checkjstring()); break;
+                case 2: world.setRaining(a.checkboolean()); break;
+                case 3: world.setPoolsEnabled(a.checkboolean()); break;
+                case 4: world.setLiquidSolver(a.checkjstring()); break;
+                case 5: world.setParticleDropsEnabled(a.checkboolean()); break;
+                case 6: world.setCheckRate((float)a.checkdouble()); break;
+                case 7: return valueOf(addDrops(world, a.checktable()));
+            }
+            return NONE;
+        }
+    }
+
+    /**
+     * world:addDrops(xy) adds a drop for every pair of numbers in xy = {x1, y1, x2, y2, ...}.
+     */
+    private static int addDrops(GameSimulation world, LuaTable xy) {
+        return world.addDrops(toFloats(xy), xy.length() / 2);
+    }
+
+    /**
+     * Numbers of the table as pairs, a number without its pair is left out.
+     */
+    private static float[] toFloats(LuaTable table) {
+        float[] floats = new float[table.length() / 2 * 2];
+        for(int i = 0; i < floats.length; i++)
+            floats[i] = (float)table.rawget(i + 1).checkdouble();
+        return floats;
+    }
+
+    /**
+     * world:countDrops(x, y, width, height) and the other drop queries, with a polygon {x1, y1, x2, y2, ...}
+     * instead of the rectangle. countDrops is the water in standard drops, so a merged drop counts as the drops
+     * it was made of. Density is the water mass per square world unit, velocity returns x and y weighted by mass.
+     */
+    private static class DropQueryFunction extends VarArgFunction {
+        DropQueryFunction(int opcode, String name) {
+            this.opcode = opcode;
+            this.name = name;
+        }
+
+        @Override
+        public Varargs invoke(Varargs args) {
+            DropQuery query = world(args.arg1()).getDropQuery();
+            float area;
+            if(args.istable(2)) {
+                float[] vertices = toFloats(args.checktable(2));
+                query.queryPolygon(vertices);
+                area = DropQuery.getArea(vertices);
+            } else {
+                float width = (float)args.checkdouble(4);
+                float height = (float)args.checkdouble(5);
+                query.queryRectangle((float)args.checkdouble(2), (float)args.checkdouble(3), width, height);
+                area = width * height;
+            }
+            switch(opcode) {
+                case 0: return valueOf(Math.round(query.getMass()));
+                case 1: return valueOf(query.getMass());
+                case 2: return valueOf(area > 0 ? query.getMass() / area : 0);
+                case 3: return varargsOf(valueOf(query.getVelocityX()), valueOf(query.getVelocityY()));
+            }
+            return NONE;
+        }
+    }
+
+    private static class WorldFunction3 extends ThreeArgFunction {
+        WorldFunction3(int opcode, String name) {
+            this.opcode = opcode;
+            this.name = name;
+        }
+
+        @Override
+        public LuaValue call(LuaValue self, LuaValue a, LuaValue b) {
+            GameSimulation world = world(self);
+            switch(opcode) {
+                case 0: world.winWhenRotated(actor(a), (float)b.checkdouble()); break;
+                case 1: world.winOnContact(actor(a), actor(b)); break;
+                case 2: world.watchContacts(a.checkjstring(), b.checkjstring()); break;
+                case 3: return valueOf(world.addDrop((float)a.checkdouble(), (float)b.checkdouble()));
+            }
+            return NONE;
+        }
+    }
+
+    private static class WorldFunctionN extends VarArgFunction {
+        WorldFunctionN(int opcode, String name) {
+            this.opcode = opcode;
+            this.name = name;
+        }
+
+        @Override
+        public Varargs invoke(Varargs args) {
+            GameSimulation world = world(args.arg1());
+            float x = (float)args.checkdouble(2);
+            float y = (float)args.checkdouble(3);
+            float width = (float)args.checkdouble(4);
+            float height = (float)args.checkdouble(5);
+            float mass = (float)args.checkdouble(6);
+            switch(opcode) {
+                case 0: world.winWhenDropsInside(x, y, width, height, mass); break;
+                case 1: world.winWhenDropsOnlyInside(x, y, width, height, mass); break;
+            }
+            return NONE;
+        }
+    }
+
+    private static class ActorFunction1 extends OneArgFunction {
+        ActorFunction1(int opcode, String name) {
+            this.opcode = opcode;
+            this.name = name;
+        }
+
+        @Override
+        public LuaValue call(LuaValue self) {
+            SimpleActor actor = actor(self);
+            switch(opcode) {
+                case 0: return valueOf(actor.getRotation());
+                case 1: return valueOf(actor.getType().name());
+            }
+            return NONE;
+        }
+    }
+
+    private static class ActorFunction2 extends TwoArgFunction {
+        ActorFunction2(int opcode, String name) {
+            this.opcode = opcode;
+            this.name = name;
+        }
+
+        @Override
+        public LuaValue call(LuaValue self, LuaValue a) {
+            SimpleActor actor = actor(self);
+            switch(opcode) {
+                case 0: actor.setRotation((float)a.checkdouble()); break;
+            }
+            return NONE;
+        }
+    }
+
+    private static class ActorFunction3 extends ThreeArgFunction {
+        ActorFunction3(int opcode, String name) {
+            this.opcode = opcode;
+            this.name = name;
+        }
+
+        @Override
+        public LuaValue call(LuaValue self, LuaValue a, LuaValue b) {
+            SimpleActor actor = actor(self);
+            float x, y;
+            // Scripts written for reflection pass a Vector2
+            if(a.isuserdata(Vector2.class)) {
+                Vector2 vector = (Vector2)a.touserdata(Vector2.class);
+                x = vector.x;
+                y = vector.y;
+            } else {
+                x = (float)a.checkdouble();
+                y = (float)b.checkdouble();
+            }
+            switch(opcode) {
+                case 0: actor.setPosition(x, y); break;
+                case 1: actor.setLinearVelocity(x, y); break;
+                case 2: actor.setBodyBox(x, y); break;
+                case 3: actor.setSpriteBox(x, y); break;
+                case 4: ((Ground)self.checkuserdata(Ground.class)).addVertex(x, y); break;
+            }
+            return NONE;
+        }
+    }
+
+    private static class DropStoreFunction1 extends OneArgFunction {
+        DropStoreFunction1(int opcode, String name) {
+            this.opcode = opcode;
+            this.name = name;
+        }
+
+        @Override
+        public LuaValue call(LuaValue self) {
+            return valueOf(dropStore(self).size());
+        }
+    }
+
+    private static class DropStoreFunction2 extends TwoArgFunction {
+        DropStoreFunction2(int opcode, String name) {
+            this.opcode = opcode;
+            this.name = name;
+        }
+
+        @Override
+        public LuaValue call(LuaValue self, LuaValue a) {
+            DropStore dropStore = dropStore(self);
+            int i = a.checkint();
+            switch(opcode) {
+                case 0: return valueOf(dropStore.getX(i));
+                case 1: return valueOf(dropStore.getY(i));
+                case 2: return valueOf(dropStore.getMass(i));
+                case 3: return valueOf(dropStore.getVelocityX(i));
+                case 4: return valueOf(dropStore.getVelocityY(i));
+            }
+            return NONE;
+        }
+    }
+}
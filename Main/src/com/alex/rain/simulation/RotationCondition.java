@@ -0,0 +1,42 @@
+/*******************************************************************************
+ * Copyright 2013 See AUTHORS file.
+ *
+ * Licensed under the GNU GENERAL PUBLIC LICENSE V3
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.gnu.org/licenses/gpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.alex.rain.simulation;
+
+import com.alex.rain.models.SimpleActor;
+
+/**
+ * Met while an actor is rotated by at least the given angle in either direction, e.g. a toppled house.
+ */
+public class RotationCondition implements WinCondition {
+    private final SimpleActor actor;
+    private final float degrees;
+
+    public RotationCondition(SimpleActor actor, float degrees) {
+        this.actor = actor;
+        this.degrees = degrees;
+    }
+
+    @Override
+    public boolean isMet() {
+        return Math.abs(actor.getRotation()) >= degrees;
+    }
+
+    SimpleActor getActor() {
+        return actor;
+    }
+
+    float getDegrees() {
+        return degrees;
+    }
+}
@@ -14,14 +14,21 @@
 package com.alex.rain.stages;
 
 import com.alex.rain.RainGame;
-import com.alex.rain.helpers.LiquidHelper;
-import com.alex.rain.listeners.GameContactListener;
+import com.alex.rain.helpers.CellList;
+import com.alex.rain.helpers.DropRecycler;
+import com.alex.rain.helpers.LiquidSolver;
+import com.alex.rain.helpers.NeighborList;
+import com.alex.rain.helpers.ParticleCollider;
+import com.alex.rain.helpers.ShallowWaterPool;
+import com.alex.rain.managers.ScriptManager;
 import com.alex.rain.managers.TextureManager;
 import com.alex.rain.models.Cloud;
-import com.alex.rain.models.Drop;
+import com.alex.rain.models.DropStore;
 import com.alex.rain.models.Emitter;
 import com.alex.rain.models.SimpleActor;
 import com.alex.rain.screens.MainMenuScreen;
+import com.alex.rain.simulation.CompiledLevel;
+import com.alex.rain.simulation.GameSimulation;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.Input;
 import com.badlogic.gdx.graphics.Color;
@@ -31,6 +38,7 @@ import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.g2d.*;
 import com.badlogic.gdx.graphics.glutils.FrameBuffer;
 import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
 import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.physics.box2d.Box2DDebugRenderer;
 import com.badlogic.gdx.physics.box2d.World;
@@ -41,92 +49,57 @@ import com.badlogic.gdx.scenes.scene2d.ui.*;
 import com.badlogic.gdx.scenes.scene2d.utils.ChangeListener;
 import com.badlogic.gdx.scenes.scene2d.utils.ClickListener;
 import com.badlogic.gdx.scenes.scene2d.utils.SpriteDrawable;
-import org.luaj.vm2.LuaFunction;
-import org.luaj.vm2.LuaValue;
-import org.luaj.vm2.lib.jse.CoerceJavaToLua;
-import org.luaj.vm2.script.LuaScriptEngine;
-
-import javax.script.Compilable;
-import javax.script.CompiledScript;
-import javax.script.ScriptEngine;
-import javax.script.SimpleBindings;
-import java.io.Reader;
-import java.io.StringReader;
+
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 
-public class GameWorld extends Stage {
-    private World physicsWorld = new World(new Vector2(0, -9.8f), true);
-    private List<SimpleActor> actorList = new ArrayList<SimpleActor>();
+/**
+ * Draws a {@link GameSimulation} and turns input into actions on it.
+ */
+public class GameWorld extends Stage implements GameSimulation.Listener {
+    private final GameSimulation simulation;
+    private final CompiledLevel compiledLevel;
+    private final DropStore dropStore;
     private List<Actor> uiActorList = new ArrayList<Actor>();
-    private ArrayList<Drop> dropList = new ArrayList<Drop>();
-    private LiquidHelper liquidHelper;
-    private LuaFunction luaOnCreateFunc;
-    private LuaFunction luaOnCheckFunc;
-    private LuaFunction luaOnBeginContactFunc;
-    private LuaFunction luaOnEndContactFunc;
     private boolean wonGame;
     private Table table, tableControl;
     private ShaderProgram shader;
     private Sprite dropSprite, backgroundSprite;
     private final Box2DDebugRenderer debugRenderer;
     private boolean debugRendererEnabled;
+    private ShapeRenderer shapeRenderer;
     private final SpriteBatch spriteBatchShadered;
     private final PolygonSpriteBatch polygonSpriteBatch;
     private final FrameBuffer m_fbo;
     private final TextureRegion m_fboRegion;
     private float time;
-    private float timeLastDrop;
-    private boolean itRain;
-    private Cloud cloud;
-    private Emitter emitter;
     private BitmapFont font = new BitmapFont();
     private int levelNumber = 0;
-    private String winHint;
     private final boolean lightVersion;
-    private int dropsMax;
     private final float dropTextureRadius;
     private final float dropTextureRadiusHalf;
     private final float dropTextureRadiusQuarter;
-    private boolean physicsEnabled = true;
-    private boolean liquidForcesEnabled = true;
     private boolean useShader = true;
-    private GameContactListener contactListener;
-    public static final float WORLD_TO_BOX = 0.1f;
-    public static final float BOX_TO_WORLD = 1 / WORLD_TO_BOX;
     private Skin skin = new Skin();
 
     public GameWorld(String name) {
         lightVersion = RainGame.isLightVersion();
-        dropsMax = lightVersion ? 1000 : 1000;
-        liquidHelper = new LiquidHelper(dropList, lightVersion);
-
-        String filename = "data/" + name + ".lua";
+        simulation = new GameSimulation(GameSimulation.loadLevel(name));
+        // -Drain.liquid.solver=pbf and -Drain.drops.particles=true try the opt-ins on any level, the compiled
+        // level recorded the settings of the script, so onCreate builds the world instead
+        String liquidSolver = System.getProperty("rain.liquid.solver");
+        boolean particleDrops = Boolean.getBoolean("rain.drops.particles");
+        if(liquidSolver != null)
+            simulation.setLiquidSolver(liquidSolver);
+        if(particleDrops)
+            simulation.setParticleDropsEnabled(true);
+        compiledLevel = liquidSolver == null && !particleDrops ? GameSimulation.loadCompiledLevel(name) : null;
+        simulation.addListener(this);
+        dropStore = simulation.getDropStore();
 
         if(name.replaceAll("[\\D]", "").length() > 0)
             levelNumber = Integer.parseInt(name.replaceAll("[\\D]", ""));
-        String filenameMain = "data/main.lua";
-        ScriptEngine engine = new LuaScriptEngine();
-        CompiledScript cs;
-
-        try {
-            //Reader reader = new FileReader(filename);
-            if(!Gdx.files.internal(filename).exists())
-                filename = "data/test.lua";
-            Reader reader = new StringReader(
-                    Gdx.files.internal(filenameMain).readString() + Gdx.files.internal(filename).readString());
-            cs = ((Compilable)engine).compile(reader);
-            SimpleBindings sb = new SimpleBindings();
-            cs.eval(sb);
-            luaOnCheckFunc = (LuaFunction) sb.get("onCheck");
-            luaOnCreateFunc = (LuaFunction) sb.get("onCreate");
-            luaOnBeginContactFunc = (LuaFunction) sb.get("onBeginContact");
-            luaOnEndContactFunc = (LuaFunction) sb.get("onEndContact");
-        } catch (Exception e) {
-            //LogHandler.log.error(e.getMessage(), e);
-            System.out.println("error: " + filename + ". " + e);
-        }
 
         final String VERTEX = Gdx.files.internal("data/drop_shader.vert").readString();
         final String FRAGMENT = lightVersion ?
@@ -161,9 +134,6 @@ public class GameWorld extends Stage {
 
         debugRenderer = new Box2DDebugRenderer();
 
-        contactListener = new GameContactListener(luaOnBeginContactFunc, luaOnEndContactFunc);
-        physicsWorld.setContactListener(contactListener);
-
         Pixmap pixmap = new Pixmap(1, 1, Pixmap.Format.RGBA8888);
         pixmap.setColor(Color.WHITE);
         pixmap.fill();
@@ -269,80 +239,43 @@ public class GameWorld extends Stage {
         });
     }
 
-    public void add(SimpleActor actor) {
-        actor.createPhysicsActor(physicsWorld);
-        actor.prepareActor();
-        actorList.add(actor);
-
-        if(actor.getType() == SimpleActor.TYPE.CLOUD)
-            cloud = (Cloud)actor;
-        else if(actor.getType() == SimpleActor.TYPE.EMITTER)
-            emitter = (Emitter)actor;
-
-        if(actor.getType() == SimpleActor.TYPE.DROP) {
-            getRoot().addActorAt(0, actor);
-            dropList.add((Drop)actor);
-        } else {
-            addActor(actor);
-        }
+    /**
+     * Actors of the simulation are drawn by the stage, drops are drawn from the {@link DropStore}.
+     */
+    @Override
+    public void onActorAdded(SimpleActor actor) {
+        actor.prepareGraphics();
+        addActor(actor);
 
-        if((cloud != null || emitter != null) && lightVersion)
+        if((simulation.getCloud() != null || simulation.getEmitter() != null) && lightVersion && tableControl == null)
             createControls();
         if(tableControl != null)
             tableControl.toFront();
     }
 
+    public void add(SimpleActor actor) {
+        simulation.add(actor);
+    }
+
     public void addUI(Actor actor) {
         addActor(actor);
         uiActorList.add(actor);
     }
 
     public void createWorld() {
-        LuaValue luaWorld = CoerceJavaToLua.coerce(this);
-        if(luaOnCreateFunc != null)
-            luaOnCreateFunc.call(luaWorld);
+        simulation.createWorld(compiledLevel);
     }
 
     @Override
     public void act(float delta) {
-        time += Gdx.graphics.getDeltaTime();
-        if(liquidForcesEnabled)
-            liquidHelper.applyLiquidConstraint(1/60f); // TODO: check this shit?
-        if(physicsEnabled)
-            physicsWorld.step(1/60f, 6, 3);
-
+        time += delta;
+        simulation.update(delta);
         super.act(delta);
 
-        LuaValue luaDrop = CoerceJavaToLua.coerce(dropList);
-        LuaValue retvals = luaOnCheckFunc.call(luaDrop);
-        if(retvals.toboolean(1) && !wonGame) {
+        if(simulation.isWon() && !wonGame) {
             wonGame = true;
             showWinnerMenu();
         }
-
-        if(itRain && !wonGame && cloud != null && dropList.size() < dropsMax) {
-            if(time - timeLastDrop > (lightVersion ? 0.09 : 0.05)) {
-                Drop drop = new Drop();
-                Random r = new Random();
-                float offset = r.nextFloat() * cloud.getWidth() * 2/3;
-                add(drop);
-                drop.setPosition(new Vector2(cloud.getPosition().x - cloud.getWidth() / 3 + offset, cloud.getPosition().y));
-                drop.getBody().applyForceToCenter(new Vector2(0, -drop.getBody().getMass() * 20 / delta), true);
-                timeLastDrop = time;
-            }
-        }
-
-        if(itRain && !wonGame && emitter != null && dropList.size() < dropsMax) {
-            if(time - timeLastDrop > (lightVersion ? 0.09 : 0.05)) {
-                Drop drop = new Drop();
-                Random r = new Random();
-                float offset = r.nextFloat() * emitter.getWidth() * 2/3;
-                add(drop);
-                drop.setPosition(new Vector2(emitter.getPosition().x - emitter.getWidth() / 3 + offset, emitter.getPosition().y));
-                drop.getBody().applyForceToCenter(new Vector2(drop.getBody().getMass() * 30 / delta, 0), true);
-                timeLastDrop = time;
-            }
-        }
     }
 
     private void showWinnerMenu() {
@@ -396,21 +329,24 @@ public class GameWorld extends Stage {
         });
     }
 
+    public GameSimulation getSimulation() {
+        return simulation;
+    }
+
     public World getPhysicsWorld() {
-        return physicsWorld;
+        return simulation.getPhysicsWorld();
     }
 
     @Override
     public boolean touchDragged(int screenX, int screenY, int pointer) {
-        if(wonGame || cloud != null || emitter != null || dropList.size() > dropsMax)
+        if(wonGame || simulation.getCloud() != null || simulation.getEmitter() != null ||
+                dropStore.size() > simulation.getDropsMax())
             return true;
-        Drop drop = new Drop();
         Random r = new Random();
         int offset = r.nextInt(10) - 10;
-        add(drop);
         float x = screenX + offset;
         float y = Gdx.graphics.getHeight() - screenY + offset;
-        drop.setPosition(new Vector2(x * 800f / Gdx.graphics.getWidth(), y * 480f / Gdx.graphics.getHeight()));
+        simulation.addDrop(x * 800f / Gdx.graphics.getWidth(), y * 480f / Gdx.graphics.getHeight());
 
         return false;
     }
@@ -420,9 +356,9 @@ public class GameWorld extends Stage {
         if(keyCode == Input.Keys.F4 || keyCode == Input.Keys.D)
             debugRendererEnabled = !debugRendererEnabled;
         else if(keyCode == Input.Keys.F5 || keyCode == Input.Keys.P)
-            physicsEnabled = !physicsEnabled;
+            simulation.setPhysicsEnabled(!simulation.isPhysicsEnabled());
         else if(keyCode == Input.Keys.F6 || keyCode == Input.Keys.L)
-            liquidForcesEnabled = !liquidForcesEnabled;
+            simulation.setLiquidForcesEnabled(!simulation.isLiquidForcesEnabled());
         else if(keyCode == Input.Keys.F7 || keyCode == Input.Keys.S)
             useShader = !useShader;
         else if(keyCode == Input.Keys.ESCAPE || keyCode == Input.Keys.Q || keyCode == Input.Keys.BACK) {
@@ -446,6 +382,8 @@ public class GameWorld extends Stage {
     }
 
     private void handleAction(int keyCode, boolean pressed) {
+        Cloud cloud = simulation.getCloud();
+        Emitter emitter = simulation.getEmitter();
         if(keyCode == Input.Keys.LEFT) {
             if(cloud != null) {
                 if(pressed) {
@@ -482,12 +420,12 @@ public class GameWorld extends Stage {
             }
         } else if(keyCode == Input.Keys.SPACE) {
             if(pressed) {
-                itRain = true;
+                simulation.setRaining(true);
                 if(cloud != null) {
                     cloud.setDirection(-1);
                 }
             } else {
-                itRain = false;
+                simulation.setRaining(false);
                 if(cloud != null) {
                     cloud.setDirection(0);
                 }
@@ -495,28 +433,47 @@ public class GameWorld extends Stage {
         }
     }
 
-    public int getDropsNumber() {
-        return dropList.size();
-    }
-
     private void drawDrops() {
-        for (Drop drop : dropList) {
-            Vector2 v = drop.getLinearVelocity();
-            Vector2 p = drop.getPosition();
-            float offsetx = v.x / 50f;
+        final float[] xs = dropStore.getXs();
+        final float[] ys = dropStore.getYs();
+        final float[] prevXs = dropStore.getPreviousXs();
+        final float[] prevYs = dropStore.getPreviousYs();
+        final float[] vxs = dropStore.getVelocitiesX();
+        final float[] vys = dropStore.getVelocitiesY();
+        final float[] masses = dropStore.getMasses();
+        final float alpha = simulation.getInterpolationAlpha();
+        for (int i = 0, n = dropStore.size(); i < n; i++) {
+            float x = prevXs[i] + (xs[i] - prevXs[i]) * alpha;
+            float y = prevYs[i] + (ys[i] - prevYs[i]) * alpha;
+            if(masses[i] > 1) {
+                float radius = dropTextureRadius * (float)Math.sqrt(masses[i]);
+                sb.draw(dropSprite, x - radius / 2, y - radius / 2, radius, radius);
+                continue;
+            }
+            float offsetx = vxs[i] / 50f;
             if(offsetx > 10)
                 offsetx = 10;
-            float offsety = v.y / 50f;
+            float offsety = vys[i] / 50f;
             if(offsety > 10)
                 offsety = 10;
             if(!lightVersion)
-                sb.draw(dropSprite, p.x - offsetx - dropTextureRadiusQuarter,
-                        p.y - offsety - dropTextureRadiusQuarter, dropTextureRadiusHalf, dropTextureRadiusHalf);
-            sb.draw(dropSprite, p.x - dropTextureRadiusHalf,
-                    p.y - dropTextureRadiusHalf, dropTextureRadius, dropTextureRadius);
+                sb.draw(dropSprite, x - offsetx - dropTextureRadiusQuarter,
+                        y - offsety - dropTextureRadiusQuarter, dropTextureRadiusHalf, dropTextureRadiusHalf);
+            sb.draw(dropSprite, x - dropTextureRadiusHalf,
+                    y - dropTextureRadiusHalf, dropTextureRadius, dropTextureRadius);
             if(!lightVersion)
-                sb.draw(dropSprite, p.x + offsetx - dropTextureRadiusQuarter,
-                        p.y + offsety - dropTextureRadiusQuarter, dropTextureRadiusHalf, dropTextureRadiusHalf);
+                sb.draw(dropSprite, x + offsetx - dropTextureRadiusQuarter,
+                        y + offsety - dropTextureRadiusQuarter, dropTextureRadiusHalf, dropTextureRadiusHalf);
+        }
+
+        // The shader melts the overlapping columns into one surface
+        for(ShallowWaterPool pool : simulation.getPools()) {
+            for(int c = 0; c < pool.getColumns(); c++) {
+                float depth = pool.getSurfaceY(c) - pool.getFloorY();
+                if(depth > 0)
+                    sb.draw(dropSprite, pool.getColumnX(c) - dropTextureRadiusHalf, pool.getFloorY() - dropTextureRadiusHalf,
+                            dropTextureRadius, depth + dropTextureRadius);
+            }
         }
     }
 
@@ -562,15 +519,15 @@ public class GameWorld extends Stage {
         getSpriteBatch().end();
 
         if(debugRendererEnabled) {
-            liquidHelper.drawDebug();
+            drawCellList(simulation.getLiquidSolver().getCellList());
 
-            getCamera().viewportHeight *= WORLD_TO_BOX;
-            getCamera().viewportWidth *= WORLD_TO_BOX;
+            getCamera().viewportHeight *= GameSimulation.WORLD_TO_BOX;
+            getCamera().viewportWidth *= GameSimulation.WORLD_TO_BOX;
             getCamera().position.set(getCamera().viewportWidth * .5f, getCamera().viewportHeight * .5f, 0f);
             getCamera().update();
             //getSpriteBatch().setProjectionMatrix(getCamera().combined);
 
-            debugRenderer.render(physicsWorld, getCamera().combined);
+            debugRenderer.render(simulation.getPhysicsWorld(), getCamera().combined);
         }
 
         getCamera().viewportHeight = Gdx.graphics.getHeight();
@@ -585,17 +542,61 @@ public class GameWorld extends Stage {
                 table.draw(getSpriteBatch(), 1f);
             }
             font.draw(getSpriteBatch(), "FPS: "+Gdx.graphics.getFramesPerSecond(), 10, Gdx.graphics.getHeight()-20);
-            font.draw(getSpriteBatch(), "Drops: "+getDropsNumber(), 10, Gdx.graphics.getHeight()-40);
-            if(winHint != null)
-                font.draw(getSpriteBatch(), "Hint: "+winHint, 10, Gdx.graphics.getHeight()-60);
+            font.draw(getSpriteBatch(), "Drops: "+simulation.getDropsNumber()+" ("+simulation.getWaterAmount()+" water)", 10, Gdx.graphics.getHeight()-40);
+            if(simulation.getWinHint() != null)
+                font.draw(getSpriteBatch(), "Hint: "+simulation.getWinHint(), 10, Gdx.graphics.getHeight()-60);
+            if(debugRendererEnabled) {
+                LiquidSolver liquidSolver = simulation.getLiquidSolver();
+                NeighborList neighborList = liquidSolver.getNeighborList();
+                font.draw(getSpriteBatch(), String.format("Neighbors: %.1f avg, %.0f%% rebuilds",
+                        neighborList.getAverageLength(), neighborList.getRebuildRate() * 100), 10, Gdx.graphics.getHeight()-80);
+                font.draw(getSpriteBatch(), "Liquid: " + liquidSolver.getAwakeCount() + " awake, " +
+                        liquidSolver.getAsleepCount() + " asleep, " + simulation.getDropMergeHelper().getMergedCount() + " merged",
+                        10, Gdx.graphics.getHeight()-100);
+                DropRecycler dropRecycler = simulation.getDropRecycler();
+                font.draw(getSpriteBatch(), String.format("Spawns: %d, %d bodies created, %d culled, %d pooled, %.1f us",
+                        dropRecycler.getSpawnedCount(), dropRecycler.getCreatedCount(), dropRecycler.getCulledCount(),
+                        dropRecycler.getFreeCount(), dropRecycler.getAverageSpawnTime()), 10, Gdx.graphics.getHeight()-120);
+                ParticleCollider particleCollider = simulation.getParticleCollider();
+                font.draw(getSpriteBatch(), "Particles: " + particleCollider.getParticleCount() + ", " +
+                        particleCollider.getContactCount() + " touching bodies", 10, Gdx.graphics.getHeight()-140);
+                ScriptManager scriptManager = ScriptManager.getInstance();
+                if(scriptManager.getOverrunCount() > 0)
+                    font.draw(getSpriteBatch(), "Scripts: " + scriptManager.getOverrunCount() + " stopped, last " +
+                            scriptManager.getLastOverrun(), 10, Gdx.graphics.getHeight()-160);
+            }
         getSpriteBatch().end();
 
         if(debugRendererEnabled)
             Table.drawDebug(this);
     }
 
-    public void setWinHint(String winHint) {
-        this.winHint = winHint;
+    /**
+     * Grid of the last neighbor search of the liquid.
+     */
+    private void drawCellList(CellList cellList) {
+        if(shapeRenderer == null)
+            shapeRenderer = new ShapeRenderer();
+
+        float minX = cellList.getMinX();
+        float minY = cellList.getMinY();
+        float maxX = minX + cellList.getColumns() * cellList.getCellSize();
+        float maxY = minY + cellList.getRows() * cellList.getCellSize();
+        shapeRenderer.begin(ShapeRenderer.ShapeType.Line);
+        shapeRenderer.setColor(1, 1, 0, 1);
+        for(int i = 0; i <= cellList.getColumns(); i++)
+            shapeRenderer.line(minX + i * cellList.getCellSize(), minY, minX + i * cellList.getCellSize(), maxY);
+        for(int j = 0; j <= cellList.getRows(); j++)
+            shapeRenderer.line(minX, minY + j * cellList.getCellSize(), maxX, minY + j * cellList.getCellSize());
+        shapeRenderer.end();
+    }
+
+    @Override
+    public void dispose() {
+        super.dispose();
+        simulation.dispose();
+        if(shapeRenderer != null)
+            shapeRenderer.dispose();
     }
 
     public PolygonSpriteBatch getPolygonSpriteBatch() {